@@ -0,0 +1,133 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.daon.identityx.audit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.daon.identityx.entity.Audit;
+
+/***
+ * A bounded, lock-free ring buffer of audit records.
+ *
+ * Any number of request threads may offer records but only the single drainer thread
+ * may poll them.  Each slot carries a sequence number so that a producer claims a slot
+ * with a single CAS on the head and then publishes the record by advancing the slot's
+ * sequence - the consumer never sees a half written slot.
+ *
+ * @author Daon
+ *
+ */
+public class AuditRingBuffer {
+
+	private final int capacity;
+	private final int mask;
+	private final AtomicReferenceArray<Audit> slots;
+	private final AtomicLongArray sequences;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	public AuditRingBuffer(int requestedCapacity) {
+
+		if (requestedCapacity < 2) {
+			throw new IllegalArgumentException("The audit buffer must hold at least 2 records");
+		}
+		int size = Integer.highestOneBit(requestedCapacity - 1) << 1;
+		this.capacity = size;
+		this.mask = size - 1;
+		this.slots = new AtomicReferenceArray<>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/***
+	 * Add the audit to the buffer
+	 *
+	 * @param anAudit
+	 * @return false if the buffer is full
+	 */
+	public boolean offer(Audit anAudit) {
+
+		long pos = head.get();
+		for (;;) {
+			int index = (int) (pos & mask);
+			long difference = sequences.get(index) - pos;
+			if (difference == 0) {
+				if (head.compareAndSet(pos, pos + 1)) {
+					slots.set(index, anAudit);
+					sequences.set(index, pos + 1);
+					return true;
+				}
+				pos = head.get();
+			} else if (difference < 0) {
+				return false;
+			} else {
+				pos = head.get();
+			}
+		}
+	}
+
+	/***
+	 * Remove the next audit from the buffer - must only be called from the drainer thread
+	 *
+	 * @return the next audit or null if the buffer is empty
+	 */
+	public Audit poll() {
+
+		long pos = tail.get();
+		int index = (int) (pos & mask);
+		if (sequences.get(index) != pos + 1) {
+			return null;
+		}
+		Audit anAudit = slots.get(index);
+		slots.set(index, null);
+		sequences.set(index, pos + capacity);
+		tail.set(pos + 1);
+		return anAudit;
+	}
+
+	/***
+	 * Move up to max audits from the buffer to the list - must only be called from the drainer thread
+	 *
+	 * @param target
+	 * @param max
+	 * @return the number of audits moved
+	 */
+	public int drainTo(List<Audit> target, int max) {
+
+		int count = 0;
+		Audit anAudit;
+		while (count < max && (anAudit = this.poll()) != null) {
+			target.add(anAudit);
+			count++;
+		}
+		return count;
+	}
+
+	public int size() {
+		long size = head.get() - tail.get();
+		return (int) Math.max(0, Math.min(size, capacity));
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+}
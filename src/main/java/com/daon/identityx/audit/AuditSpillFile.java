@@ -0,0 +1,146 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.daon.identityx.audit;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.daon.identityx.entity.Audit;
+import com.daon.identityx.entity.AuditAction;
+
+/***
+ * Holds audit records on disk when the audit buffer overflows.  Each record is one line of
+ * pipe separated values.  The drainer takes the whole file when the buffer is idle and
+ * writes the records to the database.
+ *
+ * @author Daon
+ *
+ */
+public class AuditSpillFile {
+
+	private static final Logger logger = LoggerFactory.getLogger(AuditSpillFile.class);
+	private static final String SEPARATOR = "|";
+
+	private final File file;
+	private final File replayFile;
+	private volatile boolean pending;
+
+	public AuditSpillFile(String location) {
+		this.file = new File(location);
+		this.replayFile = new File(location + ".replay");
+		this.pending = file.exists() || replayFile.exists();
+	}
+
+	/***
+	 * Append the audits to the end of the spill file
+	 *
+	 * @param audits
+	 * @throws IOException
+	 */
+	public synchronized void append(List<Audit> audits) throws IOException {
+
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+			for (Audit anAudit : audits) {
+				writer.write(this.format(anAudit));
+				writer.newLine();
+			}
+		}
+		pending = true;
+	}
+
+	/***
+	 * Remove and return all the audits in the spill file.  If the records cannot be written to
+	 * the database they should be appended again.
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	public List<Audit> takeAll() throws IOException {
+
+		synchronized (this) {
+			if (!replayFile.exists() && file.exists()) {
+				Files.move(file.toPath(), replayFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			pending = file.exists();
+		}
+		List<Audit> audits = new ArrayList<>();
+		if (!replayFile.exists()) {
+			return audits;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(replayFile.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Audit anAudit = this.parse(line);
+				if (anAudit != null) {
+					audits.add(anAudit);
+				}
+			}
+		}
+		Files.delete(replayFile.toPath());
+		return audits;
+	}
+
+	public boolean hasPending() {
+		return pending;
+	}
+
+	protected String format(Audit anAudit) {
+
+		StringBuilder builder = new StringBuilder(96);
+		builder.append(anAudit.getId()).append(SEPARATOR);
+		builder.append(anAudit.getOperation().name()).append(SEPARATOR);
+		builder.append(anAudit.getSessionId() == null ? "" : anAudit.getSessionId()).append(SEPARATOR);
+		builder.append(anAudit.getAccountId() == null ? "" : anAudit.getAccountId()).append(SEPARATOR);
+		builder.append(anAudit.getDuration()).append(SEPARATOR);
+		builder.append(anAudit.getCreatedDTM().getTime());
+		return builder.toString();
+	}
+
+	protected Audit parse(String line) {
+
+		String[] fields = line.split("\\|", -1);
+		if (fields.length != 6) {
+			logger.error("Ignoring a malformed line in the audit spill file: {}", line);
+			return null;
+		}
+		try {
+			Audit anAudit = new Audit(AuditAction.valueOf(fields[1]));
+			anAudit.setId(fields[0]);
+			anAudit.setSessionId(fields[2].length() == 0 ? null : fields[2]);
+			anAudit.setAccountId(fields[3].length() == 0 ? null : fields[3]);
+			anAudit.setDuration(Long.parseLong(fields[4]));
+			anAudit.setCreatedDTM(new Timestamp(Long.parseLong(fields[5])));
+			return anAudit;
+		} catch (IllegalArgumentException ex) {
+			logger.error("Ignoring a malformed line in the audit spill file: {}", line);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,312 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.daon.identityx.audit;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.daon.identityx.entity.Audit;
+import com.daon.identityx.repository.AuditRepository;
+import com.daon.identityx.utils.IdGenerator;
+
+/***
+ * Takes the writing of audit records off the request thread.  Audits are placed in a bounded
+ * ring buffer and a single drainer thread writes them to the Audit table as JDBC batches, either
+ * when a full batch is available or when the flush interval has passed.
+ *
+ * When the buffer is full the configured OverflowPolicy decides whether the request thread waits,
+ * the audit is dropped or the audit is spilled to disk.  On shutdown the buffer and the spill file
+ * are flushed to the database.
+ *
+ * If asynchronous auditing is disabled the audits are saved through the AuditRepository as before.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class AuditWriter implements IAuditWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger(AuditWriter.class);
+
+	private static final String INSERT_AUDIT = "insert into Audit (Id, Operation, Session_Id, Account_Id, Duration, CreatedDTM) values (?, ?, ?, ?, ?, ?)";
+	private static final long BLOCKED_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private AuditRepository auditRepository;
+	@Autowired
+	private CounterService counterService;
+	@Autowired
+	private GaugeService gaugeService;
+
+	@Value("${fido.audit.async:true}")
+	private boolean async;
+	@Value("${fido.audit.buffer_size:8192}")
+	private int bufferSize;
+	@Value("${fido.audit.batch_size:200}")
+	private int batchSize;
+	@Value("${fido.audit.flush_interval:500}")
+	private long flushInterval;
+	@Value("${fido.audit.overflow_policy:BLOCK}")
+	private OverflowPolicy overflowPolicy;
+	@Value("${fido.audit.spill_file:Relying_Party_Audit.spill}")
+	private String spillFileLocation;
+	@Value("${fido.audit.shutdown_timeout:10000}")
+	private long shutdownTimeout;
+
+	private AuditRingBuffer buffer;
+	private AuditSpillFile spillFile;
+	private TransactionTemplate transactionTemplate;
+	private Thread drainer;
+	private volatile boolean running;
+
+	public AuditWriter() {
+	}
+
+	@PostConstruct
+	public void start() {
+
+		if (!async) {
+			logger.info("Asynchronous auditing is disabled - audits will be written on the request thread");
+			return;
+		}
+		this.buffer = new AuditRingBuffer(bufferSize);
+		this.spillFile = new AuditSpillFile(spillFileLocation);
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.running = true;
+		this.drainer = new Thread(this::drain, "audit-drainer");
+		this.drainer.setDaemon(true);
+		this.drainer.start();
+		logger.info("Started the audit drainer - buffer: {}, batch size: {}, flush interval: {}ms, overflow policy: {}",
+				buffer.getCapacity(), batchSize, flushInterval, overflowPolicy);
+	}
+
+	@PreDestroy
+	public void stop() {
+
+		if (!async || !running) {
+			return;
+		}
+		logger.info("Stopping the audit drainer - {} audits waiting to be written", buffer.size());
+		running = false;
+		LockSupport.unpark(drainer);
+		try {
+			drainer.join(shutdownTimeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (drainer.isAlive()) {
+			logger.error("The audit drainer did not stop within {}ms", shutdownTimeout);
+		}
+	}
+
+	@Override
+	public void write(Audit anAudit) {
+
+		if (!async) {
+			auditRepository.save(anAudit);
+			return;
+		}
+		if (anAudit.getId() == null) {
+			anAudit.setId(IdGenerator.newTimeOrderedId());
+		}
+		if (buffer.offer(anAudit)) {
+			if (buffer.size() >= batchSize) {
+				LockSupport.unpark(drainer);
+			}
+			return;
+		}
+
+		switch (overflowPolicy) {
+		case DROP:
+			counterService.increment("audit.dropped");
+			logger.warn("The audit buffer is full - dropped the audit for operation: {}", anAudit.getOperation());
+			break;
+		case SPILL:
+			this.spill(Collections.singletonList(anAudit));
+			break;
+		case BLOCK:
+		default:
+			counterService.increment("audit.blocked");
+			while (!buffer.offer(anAudit)) {
+				if (!running) {
+					this.spill(Collections.singletonList(anAudit));
+					return;
+				}
+				LockSupport.unpark(drainer);
+				LockSupport.parkNanos(BLOCKED_WAIT_NANOS);
+			}
+		}
+	}
+
+	/***
+	 * The body of the drainer thread
+	 */
+	protected void drain() {
+
+		List<Audit> batch = new ArrayList<>(batchSize);
+		long batchStarted = 0;
+		while (running) {
+			boolean wasEmpty = batch.isEmpty();
+			buffer.drainTo(batch, batchSize - batch.size());
+			long now = System.currentTimeMillis();
+			if (wasEmpty && !batch.isEmpty()) {
+				batchStarted = now;
+			}
+			if (batch.size() >= batchSize || (!batch.isEmpty() && now - batchStarted >= flushInterval)) {
+				this.flush(batch);
+				continue;
+			}
+			if (batch.isEmpty() && spillFile.hasPending() && this.replaySpillFile()) {
+				continue;
+			}
+			gaugeService.submit("audit.queue.depth", buffer.size());
+			long wait = batch.isEmpty() ? flushInterval : flushInterval - (now - batchStarted);
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(1, wait)));
+		}
+
+		// Shutting down - write everything which is left
+		while (buffer.drainTo(batch, batchSize) > 0 || !batch.isEmpty()) {
+			this.flush(batch);
+		}
+		this.replaySpillFile();
+		logger.info("The audit drainer has stopped");
+	}
+
+	/***
+	 * Write the batch to the database and clear it.  If the write fails the audits are spilled
+	 * to disk when the SPILL policy is in use and otherwise they are lost.
+	 *
+	 * @param batch
+	 */
+	protected void flush(List<Audit> batch) {
+
+		long start = System.currentTimeMillis();
+		try {
+			this.insert(batch);
+			gaugeService.submit("audit.batch.size", batch.size());
+			gaugeService.submit("audit.batch.duration", System.currentTimeMillis() - start);
+		} catch (Exception ex) {
+			logger.error("An exception occurred while attempting to write {} audits.  Exception: {}", batch.size(), ex.getMessage());
+			counterService.increment("audit.failed");
+			if (overflowPolicy == OverflowPolicy.SPILL) {
+				this.spill(batch);
+			}
+		} finally {
+			batch.clear();
+		}
+	}
+
+	/***
+	 * Write the audits in the spill file to the database
+	 *
+	 * @return false if the audits could not be written and have been spilled again
+	 */
+	protected boolean replaySpillFile() {
+
+		List<Audit> spilled;
+		try {
+			spilled = spillFile.takeAll();
+		} catch (Exception ex) {
+			logger.error("An exception occurred while attempting to read the audit spill file.  Exception: {}", ex.getMessage());
+			return false;
+		}
+		if (spilled.isEmpty()) {
+			return true;
+		}
+		logger.info("Writing {} audits from the audit spill file", spilled.size());
+		for (int from = 0; from < spilled.size(); from += batchSize) {
+			List<Audit> batch = spilled.subList(from, Math.min(from + batchSize, spilled.size()));
+			try {
+				this.insert(batch);
+			} catch (Exception ex) {
+				logger.error("An exception occurred while attempting to write the spilled audits.  Exception: {}", ex.getMessage());
+				this.spill(spilled.subList(from, spilled.size()));
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected void insert(final List<Audit> batch) {
+
+		transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				jdbcTemplate.batchUpdate(INSERT_AUDIT, new BatchPreparedStatementSetter() {
+					@Override
+					public void setValues(PreparedStatement ps, int i) throws SQLException {
+						Audit anAudit = batch.get(i);
+						ps.setString(1, anAudit.getId());
+						// The JPA mapping stores the operation by its ordinal
+						ps.setInt(2, anAudit.getOperation().ordinal());
+						ps.setObject(3, anAudit.getSessionId(), Types.CHAR);
+						ps.setObject(4, anAudit.getAccountId(), Types.CHAR);
+						ps.setLong(5, anAudit.getDuration());
+						ps.setTimestamp(6, anAudit.getCreatedDTM());
+					}
+
+					@Override
+					public int getBatchSize() {
+						return batch.size();
+					}
+				});
+			}
+		});
+	}
+
+	protected void spill(List<Audit> audits) {
+
+		try {
+			spillFile.append(audits);
+			counterService.increment("audit.spilled");
+		} catch (Exception ex) {
+			logger.error("An exception occurred while attempting to spill {} audits to disk.  Exception: {}", audits.size(), ex.getMessage());
+			counterService.increment("audit.dropped");
+		}
+	}
+
+	public int getQueueDepth() {
+		return buffer == null ? 0 : buffer.size();
+	}
+}
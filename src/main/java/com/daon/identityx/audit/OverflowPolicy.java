@@ -0,0 +1,33 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.daon.identityx.audit;
+
+/***
+ * What the audit writer does when the audit buffer is full.
+ * 
+ * @author Daon
+ *
+ */
+public enum OverflowPolicy {
+
+	/** The request thread waits until the drainer has made room */
+	BLOCK,
+	/** The audit is discarded and the drop counter is incremented */
+	DROP,
+	/** The audit is appended to the spill file and written once the buffer has drained */
+	SPILL
+}
@@ -0,0 +1,340 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.actuate.metrics.Metric;
+
+/***
+ * A size bounded cache whose entries expire after a TTL.
+ *
+ * Reading an entry does not take a lock.  When a key is missing or has expired only the first
+ * caller loads it - any other caller for the same key waits for that load and is given its
+ * value or exception.  When the cache grows past its maximum size the least recently read
+ * tenth of the entries, after any expired ones, is evicted so the cost of evicting is spread
+ * over many inserts.  A load which is in progress when its key is invalidated is returned to
+ * its callers but not held.
+ *
+ * The hits, misses, loads, load failures, total load time and evictions are counted and can
+ * be published as metrics along with the hit ratio.
+ *
+ * @author Daon
+ *
+ */
+public class BoundedCache<K, V> {
+
+	private final String name;
+	private final int maxSize;
+	private final long ttl;
+
+	private final ConcurrentHashMap<K, CacheEntry<V>> entries = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder loadFailures = new LongAdder();
+	private final LongAdder loadTime = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/***
+	 * @param name the name the metrics are published under
+	 * @param maxSize the number of entries above which entries are evicted
+	 * @param ttl the time in milliseconds after which an entry expires, 0 or less if entries never expire
+	 */
+	public BoundedCache(String name, int maxSize, long ttl) {
+		this.name = name;
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+	}
+
+	/***
+	 * Get the value for the key, using the loader if the key is missing or has expired
+	 *
+	 * @param key
+	 * @param loader
+	 * @return
+	 * @throws E the exception thrown by the loader
+	 */
+	public <E extends Exception> V get(K key, Loader<K, V, E> loader) throws E {
+
+		V value = this.getIfPresent(key);
+		if (value != null) {
+			return value;
+		}
+		misses.increment();
+
+		CompletableFuture<V> load = new CompletableFuture<>();
+		CompletableFuture<V> inProgress = loading.putIfAbsent(key, load);
+		if (inProgress != null) {
+			return this.<E>await(inProgress);
+		}
+		try {
+			// Another caller may have completed its load between the read and taking the load
+			CacheEntry<V> entry = entries.get(key);
+			if (entry != null && !this.isExpired(entry, System.currentTimeMillis())) {
+				load.complete(entry.getValue());
+				return entry.getValue();
+			}
+			long start = System.nanoTime();
+			try {
+				value = loader.load(key);
+			} finally {
+				loads.increment();
+				loadTime.add(System.nanoTime() - start);
+			}
+			if (value != null) {
+				final V loaded = value;
+				loading.computeIfPresent(key, (k, inProgressLoad) -> {
+					if (inProgressLoad == load) {
+						this.put(k, loaded);
+					}
+					return inProgressLoad;
+				});
+			}
+			load.complete(value);
+			return value;
+		} catch (Exception ex) {
+			loadFailures.increment();
+			load.completeExceptionally(ex);
+			throw ex;
+		} catch (Error ex) {
+			// The callers waiting for the load have no timeout so it must always be completed
+			loadFailures.increment();
+			load.completeExceptionally(ex);
+			throw ex;
+		} finally {
+			loading.remove(key, load);
+		}
+	}
+
+	/***
+	 * Get the value for the key if it is held and has not expired
+	 *
+	 * @param key
+	 * @return the value or null
+	 */
+	public V getIfPresent(K key) {
+
+		CacheEntry<V> entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		if (this.isExpired(entry, now)) {
+			entries.remove(key, entry);
+			return null;
+		}
+		if (entry.getLastRead() != now) {
+			entry.setLastRead(now);
+		}
+		hits.increment();
+		return entry.getValue();
+	}
+
+	/***
+	 * Hold the value for the key, replacing any value already held
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public void put(K key, V value) {
+
+		entries.put(key, new CacheEntry<V>(value, System.currentTimeMillis()));
+		if (entries.size() > maxSize) {
+			this.evict();
+		}
+	}
+
+	/***
+	 * Remove the value for the key and return it if it had not expired
+	 *
+	 * @param key
+	 * @return the value or null
+	 */
+	public V take(K key) {
+
+		CacheEntry<V> entry = entries.remove(key);
+		if (entry == null || this.isExpired(entry, System.currentTimeMillis())) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return entry.getValue();
+	}
+
+	/***
+	 * Remove the key so that it is loaded again the next time it is read
+	 *
+	 * @param key
+	 */
+	public void invalidate(K key) {
+		loading.remove(key);
+		entries.remove(key);
+	}
+
+	public void invalidateAll() {
+		loading.clear();
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/***
+	 * The counters of the cache as metrics named after the cache
+	 *
+	 * @return
+	 */
+	public Collection<Metric<?>> metrics() {
+
+		List<Metric<?>> metrics = new ArrayList<>();
+		metrics.add(new Metric<Integer>(name + ".size", entries.size()));
+		metrics.add(new Metric<Long>(name + ".hit", hits.sum()));
+		metrics.add(new Metric<Long>(name + ".miss", misses.sum()));
+		long hitCount = hits.sum();
+		long lookups = hitCount + misses.sum();
+		metrics.add(new Metric<Double>(name + ".hit_ratio", lookups == 0 ? 0.0 : (double) hitCount / lookups));
+		metrics.add(new Metric<Long>(name + ".load", loads.sum()));
+		metrics.add(new Metric<Long>(name + ".load_failed", loadFailures.sum()));
+		metrics.add(new Metric<Long>(name + ".load_time", TimeUnit.NANOSECONDS.toMillis(loadTime.sum())));
+		metrics.add(new Metric<Long>(name + ".evicted", evictions.sum()));
+		return metrics;
+	}
+
+	protected boolean isExpired(CacheEntry<V> entry, long now) {
+		return ttl > 0 && now - entry.getLoadedAt() >= ttl;
+	}
+
+	/***
+	 * Remove the expired entries and then the least recently read entries until the cache is
+	 * a tenth below its maximum size
+	 */
+	protected synchronized void evict() {
+
+		int target = maxSize - Math.max(1, maxSize / 10);
+		if (entries.size() <= maxSize) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		List<Map.Entry<K, CacheEntry<V>>> candidates = new ArrayList<>(entries.size());
+		for (Map.Entry<K, CacheEntry<V>> entry : entries.entrySet()) {
+			if (this.isExpired(entry.getValue(), now)) {
+				if (entries.remove(entry.getKey(), entry.getValue())) {
+					evictions.increment();
+				}
+			} else {
+				candidates.add(entry);
+			}
+		}
+		int excess = entries.size() - target;
+		if (excess <= 0) {
+			return;
+		}
+		candidates.sort((a, b) -> Long.compare(a.getValue().getLastRead(), b.getValue().getLastRead()));
+		for (int i = 0; i < candidates.size() && excess > 0; i++) {
+			Map.Entry<K, CacheEntry<V>> candidate = candidates.get(i);
+			if (entries.remove(candidate.getKey(), candidate.getValue())) {
+				evictions.increment();
+				excess--;
+			}
+		}
+	}
+
+	/***
+	 * Wait for the load of another caller and return its value or rethrow its exception
+	 *
+	 * @param load
+	 * @return
+	 * @throws E
+	 */
+	@SuppressWarnings("unchecked")
+	protected <E extends Exception> V await(CompletableFuture<V> load) throws E {
+
+		try {
+			return load.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw (E) cause;
+		}
+	}
+
+	/***
+	 * Loads the value of a key which is not in the cache
+	 */
+	@FunctionalInterface
+	public interface Loader<K, V, E extends Exception> {
+
+		V load(K key) throws E;
+	}
+
+	/***
+	 * A value held in the cache along with when it was loaded and last read
+	 */
+	protected static class CacheEntry<V> {
+
+		private final V value;
+		private final long loadedAt;
+		private volatile long lastRead;
+
+		CacheEntry(V value, long loadedAt) {
+			this.value = value;
+			this.loadedAt = loadedAt;
+			this.lastRead = loadedAt;
+		}
+
+		V getValue() {
+			return value;
+		}
+
+		long getLoadedAt() {
+			return loadedAt;
+		}
+
+		long getLastRead() {
+			return lastRead;
+		}
+
+		void setLastRead(long lastRead) {
+			this.lastRead = lastRead;
+		}
+	}
+}
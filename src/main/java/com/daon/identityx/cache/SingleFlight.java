@@ -0,0 +1,146 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.actuate.metrics.Metric;
+
+import com.daon.identityx.cache.BoundedCache.Loader;
+
+/***
+ * Coalesces concurrent loads of the same key.
+ *
+ * Only the first caller for a key runs its loader - any other caller for the key which arrives
+ * while that load is in progress waits for it and is given its value or exception.  Nothing is
+ * held once the load completes so the next caller loads the key again and a failure is never
+ * handed to a later caller.
+ *
+ * The loads and the calls which shared another caller's load are counted and can be published
+ * as metrics.
+ *
+ * @author Daon
+ *
+ */
+public class SingleFlight<K, V> {
+
+	private final String name;
+	private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+
+	/***
+	 * @param name the name the metrics are published under
+	 */
+	public SingleFlight(String name) {
+		this.name = name;
+	}
+
+	/***
+	 * Load the key, or wait for the load already in progress for it
+	 *
+	 * @param key
+	 * @param loader
+	 * @return
+	 * @throws E the exception thrown by the loader
+	 */
+	public <E extends Exception> V execute(K key, Loader<K, V, E> loader) throws E {
+
+		CompletableFuture<V> load = new CompletableFuture<>();
+		CompletableFuture<V> inProgress = inFlight.putIfAbsent(key, load);
+		if (inProgress != null) {
+			coalesced.increment();
+			return this.<E>await(inProgress);
+		}
+		loads.increment();
+		try {
+			V value = loader.load(key);
+			load.complete(value);
+			return value;
+		} catch (Exception ex) {
+			load.completeExceptionally(ex);
+			throw ex;
+		} catch (Error ex) {
+			load.completeExceptionally(ex);
+			throw ex;
+		} finally {
+			inFlight.remove(key, load);
+		}
+	}
+
+	/***
+	 * The number of loads in progress
+	 *
+	 * @return
+	 */
+	public int size() {
+		return inFlight.size();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/***
+	 * The counters as metrics named after the single flight
+	 *
+	 * @return
+	 */
+	public Collection<Metric<?>> metrics() {
+
+		List<Metric<?>> metrics = new ArrayList<>();
+		metrics.add(new Metric<Integer>(name + ".in_flight", inFlight.size()));
+		metrics.add(new Metric<Long>(name + ".load", loads.sum()));
+		metrics.add(new Metric<Long>(name + ".coalesced", coalesced.sum()));
+		return metrics;
+	}
+
+	/***
+	 * Wait for the load of another caller and return its value or rethrow its exception
+	 *
+	 * @param load
+	 * @return
+	 * @throws E
+	 */
+	@SuppressWarnings("unchecked")
+	protected <E extends Exception> V await(CompletableFuture<V> load) throws E {
+
+		try {
+			return load.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw (E) cause;
+		}
+	}
+}
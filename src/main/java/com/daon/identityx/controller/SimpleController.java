@@ -16,10 +16,11 @@
 
 package com.daon.identityx.controller;
 
-import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.sql.Timestamp;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -28,8 +29,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -39,7 +45,9 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import com.daon.identityx.audit.IAuditWriter;
 import com.daon.identityx.controller.model.AuthenticationMethod;
 import com.daon.identityx.controller.model.AuthenticatorInfo;
 import com.daon.identityx.controller.model.CreateAccount;
@@ -59,18 +67,29 @@ import com.daon.identityx.controller.model.ListAuthenticatorsResponse;
 import com.daon.identityx.controller.model.ValidateTransactionAuth;
 import com.daon.identityx.controller.model.ValidateTransactionAuthResponse;
 import com.daon.identityx.entity.Account;
+import com.daon.identityx.entity.AccountCredential;
 import com.daon.identityx.entity.Audit;
 import com.daon.identityx.entity.AuditAction;
+import com.daon.identityx.entity.PasswordHashAlgorithm;
 import com.daon.identityx.entity.Session;
 import com.daon.identityx.exception.ProcessingException;
+import com.daon.identityx.exception.ServerBusyException;
+import com.daon.identityx.fido.DeactivationResult;
 import com.daon.identityx.fido.FIDORegChallengeAndId;
+import com.daon.identityx.fido.FidoFacetsCache;
+import com.daon.identityx.fido.FidoFacetsCache.CachedFacets;
+import com.daon.identityx.fido.IAsyncIdentityXServices;
 import com.daon.identityx.fido.IIdentityXServices;
+import com.daon.identityx.fido.PolicyCache;
+import com.daon.identityx.password.PasswordHashEngine;
+import com.daon.identityx.password.PasswordHashPolicy;
+import com.daon.identityx.password.PasswordHashingExecutor;
+import com.daon.identityx.repository.AccountCredentialRepository;
 import com.daon.identityx.repository.AccountRepository;
-import com.daon.identityx.repository.AuditRepository;
-import com.daon.identityx.repository.SessionRepository;
+import com.daon.identityx.repository.LastLoginWriter;
 import com.daon.identityx.rest.model.pojo.AuthenticationRequest;
-import com.daon.identityx.rest.model.pojo.FIDOFacets;
-import com.daon.identityx.rest.model.pojo.RegistrationChallenge;
+import com.daon.identityx.rest.model.pojo.User;
+import com.daon.identityx.session.ISessionStore;
 
 /***
  * This class presents the REST interface to the sample application.
@@ -84,19 +103,37 @@ public class SimpleController {
 
 	private static final Logger logger = LoggerFactory.getLogger(SimpleController.class);
 
-	private final static int BASE_ITERATION_NUMBER = 10000;
-
 	@Autowired
 	private AccountRepository accountRepository;
 	@Autowired
-	private AuditRepository auditRepository;
+	private AccountCredentialRepository accountCredentialRepository;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private LastLoginWriter lastLoginWriter;
 	@Autowired
-	private SessionRepository sessionRepository;
+	private IAuditWriter auditWriter;
+	@Autowired
+	private ISessionStore sessionStore;
 	@Autowired
 	private IIdentityXServices identityXServices;
+	@Autowired
+	private IAsyncIdentityXServices asyncIdentityXServices;
+	@Autowired
+	private PasswordHashingExecutor passwordHashingExecutor;
+	@Autowired
+	private PasswordHashEngine passwordHashEngine;
+	@Autowired
+	private PasswordHashPolicy passwordHashPolicy;
+	@Autowired
+	private FidoFacetsCache fidoFacetsCache;
+	@Autowired
+	private PolicyCache policyCache;
 
 	@Value("${fido.session_period:900000}")
 	private long sessionPeriod;
+	@Value("${fido.identityx.async.timeout:30000}")
+	private long asyncTimeout;
 
 	private SecureRandom random;
 
@@ -116,6 +153,23 @@ public class SimpleController {
 		return ex.getError();
 	}
 
+	/***
+	 * If the server has no capacity left to process the request, return the Error to the caller
+	 * with a HTTP response code of SERVICE_UNAVAILABLE so that it can retry later
+	 * 
+	 * @param ex
+	 * @return
+	 */
+	@ExceptionHandler(ServerBusyException.class)
+	@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+	@ResponseBody
+	public Error handleServerBusyException(ServerBusyException ex, HttpServletResponse response) {
+
+		logger.error("The server is too busy to process the request.  Exception: " + ex.getError());
+		response.setHeader("Retry-After", "1");
+		return ex.getError();
+	}
+
 	/**
 	 * The a web method throws an exception with a http status, then we controller will pass this detail
 	 * back to the client.
@@ -152,22 +206,53 @@ public class SimpleController {
 	 * @return
 	 */
 	@RequestMapping(value = "facets", method = RequestMethod.GET)
-	@ResponseStatus(value = HttpStatus.OK)
-	public @ResponseBody FIDOFacets getFidoFacets() {
+	public ResponseEntity<byte[]> getFidoFacets(@RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
 		logger.info("***** Received a request for facets");
 		long start = System.currentTimeMillis();
 		Audit anAudit = new Audit(AuditAction.GET_FACETS);
 		try {
-			return this.getIdentityXServices().getFidoFacets();
+			CachedFacets cachedFacets = this.getFidoFacetsCache().get();
+			HttpHeaders headers = new HttpHeaders();
+			headers.setETag(cachedFacets.getETag());
+			headers.setCacheControl("public, max-age=" + this.getFidoFacetsCache().getMaxAgeSeconds());
+			if (this.matchesETag(ifNoneMatch, cachedFacets.getETag())) {
+				return new ResponseEntity<byte[]>(headers, HttpStatus.NOT_MODIFIED);
+			}
+			headers.setContentType(MediaType.APPLICATION_JSON);
+			return new ResponseEntity<byte[]>(cachedFacets.getJson(), headers, HttpStatus.OK);
 		} finally {
 			anAudit.setDuration(System.currentTimeMillis() - start);
 			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
+			this.getAuditWriter().write(anAudit);
 			logger.info("***** Sending response to the request for facets - duration: {}ms", (System.currentTimeMillis() - start));
 		}
 	}
 
 
+	/***
+	 * Whether the If-None-Match header of a conditional GET contains the ETag
+	 * 
+	 * @param ifNoneMatch
+	 * @param eTag
+	 * @return
+	 */
+	protected boolean matchesETag(String ifNoneMatch, String eTag) {
+
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/***
 	 * UNPROTECTED OPERATION - No session is required to perform this operation
 	 * This operation creates an account for the user based on the details passed
@@ -196,24 +281,40 @@ public class SimpleController {
 		}
 
 		Account newAccount = new Account(createAccount);
+		AccountCredential newCredential = new AccountCredential();
 
-		this.createHash(newAccount, createAccount.getPassword());
+		this.createHash(newCredential, createAccount.getPassword());
 		Timestamp now = new Timestamp(System.currentTimeMillis());
 		newAccount.setCreatedDTM(now);
 		newAccount.setLastLoggedIn(now);
 
 		try {
 
-			newAccount = this.getAccountRepository().save(newAccount);
-			Session aSession = new Session(newAccount, sessionPeriod);
-			aSession = this.getSessionRepository().save(aSession);
+			if (this.getAccountRepository().findByEmail(createAccount.getEmail()) != null) {
+				throw new ProcessingException(Error.ACCOUNT_ALREADY_EXISTS);
+			}
 
-			CreateAccountResponse createAccountResponse = new CreateAccountResponse();
-			createAccountResponse.setSessionId(aSession.getId());
+			// IdentityX is called before anything is written so that the account, with its IdentityX ID, and its 
+			// credential are inserted together in one short transaction rather than inserted and then updated
+			FIDORegChallengeAndId regChallengeAndId = null;
 			if (createAccount.isRegistrationRequested()) {
-				FIDORegChallengeAndId regChallengeAndId = this.getIdentityXServices().createRegRequest(createAccount.getEmail(), null);
+				regChallengeAndId = this.getIdentityXServices().createRegRequest(createAccount.getEmail(), null);
 				newAccount.setIdXId(regChallengeAndId.getIdXId());
-				this.getAccountRepository().save(newAccount);
+			}
+
+			// The account and its credential are created together so there is never an account without a password
+			Account savedAccount = new TransactionTemplate(this.getTransactionManager()).execute(status -> {
+				Account account = this.getAccountRepository().save(newAccount);
+				newCredential.setAccountId(account.getId());
+				this.getAccountCredentialRepository().save(newCredential);
+				return account;
+			});
+			Session aSession = new Session(savedAccount, sessionPeriod);
+			aSession = this.getSessionStore().create(aSession);
+
+			CreateAccountResponse createAccountResponse = new CreateAccountResponse();
+			createAccountResponse.setSessionId(aSession.getId());
+			if (regChallengeAndId != null) {
 				createAccountResponse.setFidoRegistrationRequest(regChallengeAndId.getRegistrationChallenge().getFidoRegistrationRequest());
 				createAccountResponse.setRegistrationRequestId(regChallengeAndId.getRegistrationChallenge().getHref());
 			}
@@ -223,7 +324,7 @@ public class SimpleController {
 		} finally {
 			anAudit.setDuration(System.currentTimeMillis() - start);
 			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
+			this.getAuditWriter().write(anAudit);
 			logger.info("***** Sending response to the request to createAccount - duration: {}ms", (System.currentTimeMillis() - start));
 		}
 
@@ -238,22 +339,21 @@ public class SimpleController {
 	 */
 	@RequestMapping(value = "authRequests", method = RequestMethod.GET, consumes = { "application/json" })
 	@ResponseStatus(value = HttpStatus.CREATED)
-	public @ResponseBody CreateAuthRequestResponse createAuthRequest() {
+	public @ResponseBody DeferredResult<CreateAuthRequestResponse> createAuthRequest() {
 
 		logger.info("***** Received a request to create an authentication request");
 		long start = System.currentTimeMillis();
 		Audit anAudit = new Audit(AuditAction.CREATE_AUTH_REQUEST);
 		try {
-			AuthenticationRequest request = this.getIdentityXServices().createAuthRequest();
-			CreateAuthRequestResponse response = new CreateAuthRequestResponse();
-			response.setAuthenticationRequestId(request.getHref());
-			response.setFidoAuthenticationRequest(request.getFidoAuthenticationRequest());
-			return response;
-		} finally {
-			anAudit.setDuration(System.currentTimeMillis() - start);
-			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
-			logger.info("***** Sending response to the request to createAuthenticationRequest - duration: {}ms", (System.currentTimeMillis() - start));
+			return this.defer(this.getAsyncIdentityXServices().createAuthRequest().thenApply(request -> {
+				CreateAuthRequestResponse response = new CreateAuthRequestResponse();
+				response.setAuthenticationRequestId(request.getHref());
+				response.setFidoAuthenticationRequest(request.getFidoAuthenticationRequest());
+				return response;
+			}), anAudit, start, "createAuthenticationRequest");
+		} catch (RuntimeException ex) {
+			this.writeAudit(anAudit, start, "createAuthenticationRequest");
+			throw ex;
 		}
 	}
 
@@ -286,7 +386,7 @@ public class SimpleController {
 		} finally {
 			anAudit.setDuration(System.currentTimeMillis() - start);
 			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
+			this.getAuditWriter().write(anAudit);
 			logger.info("***** Sending response to the request to createSession - duration: {}ms", (System.currentTimeMillis() - start));
 		}
 
@@ -308,18 +408,23 @@ public class SimpleController {
 			Session session = this.validateSession(sessionId);
 			Account account = this.getAccountRepository().findById(session.getAccountId());
 			DeleteAccountResponse response = new DeleteAccountResponse();
+			anAudit.setAccountId(account.getId());
 			if (account.getIdXId() != null) {
-				AuthenticatorInfo[] fidoDeregReqs = this.getIdentityXServices().deactivateAndDelete(account.getIdXId());
-				response.setFidoDeregistrationRequests(fidoDeregReqs);
+				DeactivationResult deactivation = this.getIdentityXServices().deactivateAndDelete(account.getIdXId());
+				response.setFidoDeregistrationRequests(deactivation.getFidoDeregistrationRequests());
+				if (!deactivation.isUserDeleted()) {
+					logger.error("Not all the authenticators of account: {} could be deactivated - the account has not been deleted", account.getId());
+					return response;
+				}
 			}
-			anAudit.setAccountId(account.getId());
 			this.getAccountRepository().delete(account.getId());
-			this.getSessionRepository().delete(session);
+			this.getSessionStore().delete(session);
+			response.setAccountDeleted(true);
 			return response;
 		} finally {
 			anAudit.setDuration(System.currentTimeMillis() - start);
 			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
+			this.getAuditWriter().write(anAudit);
 			logger.info("***** Sending response to the request to deleteAccount - duration: {}ms", (System.currentTimeMillis() - start));
 		}
 	}
@@ -361,7 +466,7 @@ public class SimpleController {
 		} finally {
 			anAudit.setDuration(System.currentTimeMillis() - start);
 			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
+			this.getAuditWriter().write(anAudit);
 			logger.info("***** Sending response to the request to validateTransactionAuth - duration: {}ms", (System.currentTimeMillis() - start));
 		}
 
@@ -381,12 +486,12 @@ public class SimpleController {
 		Audit anAudit = new Audit(AuditAction.DELETE_SESSION);
 		try {
 			Session session = this.validateSession(sessionId);
-			this.getSessionRepository().delete(session);
+			this.getSessionStore().delete(session);
 
 		} finally {
 			anAudit.setDuration(System.currentTimeMillis() - start);
 			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
+			this.getAuditWriter().write(anAudit);
 			logger.info("***** Sending response to the request to deleteSession - duration: {}ms", (System.currentTimeMillis() - start));
 		}
 	}
@@ -399,7 +504,7 @@ public class SimpleController {
 	 */
 	@RequestMapping(value = "transactionAuthRequests", method = RequestMethod.POST, consumes = { "application/json" })
 	@ResponseStatus(value = HttpStatus.CREATED)
-	public @ResponseBody CreateAuthRequestResponse createTransactionAuthRequest(@RequestHeader("Session-Id") String sessionId, @RequestBody CreateTransactionAuthRequest createTransaction) {
+	public @ResponseBody DeferredResult<CreateAuthRequestResponse> createTransactionAuthRequest(@RequestHeader("Session-Id") String sessionId, @RequestBody CreateTransactionAuthRequest createTransaction) {
 
 		logger.info("***** Received a request to create a transaction authentication request for session: {}", sessionId);
 		long start = System.currentTimeMillis();
@@ -409,18 +514,17 @@ public class SimpleController {
 			Account account = this.getAccountRepository().findById(session.getAccountId());
 			anAudit.setAccountId(account.getId());
 
-			AuthenticationRequest request = this.getIdentityXServices().createAuthTransactionRequest(account.getIdXId(),
+			return this.defer(this.getAsyncIdentityXServices().createAuthTransactionRequest(account.getIdXId(),
 					createTransaction.getTransactionContentType(), createTransaction.getTransactionContent(),
-					createTransaction.isStepUpAuth());
-			CreateAuthRequestResponse response = new CreateAuthRequestResponse();
-			response.setAuthenticationRequestId(request.getHref());
-			response.setFidoAuthenticationRequest(request.getFidoAuthenticationRequest());
-			return response;
-		} finally {
-			anAudit.setDuration(System.currentTimeMillis() - start);
-			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
-			logger.info("***** Sending response to the request to createTransactionAuthRequest - duration: {}ms", (System.currentTimeMillis() - start));
+					createTransaction.isStepUpAuth()).thenApply(request -> {
+				CreateAuthRequestResponse response = new CreateAuthRequestResponse();
+				response.setAuthenticationRequestId(request.getHref());
+				response.setFidoAuthenticationRequest(request.getFidoAuthenticationRequest());
+				return response;
+			}), anAudit, start, "createTransactionAuthRequest");
+		} catch (RuntimeException ex) {
+			this.writeAudit(anAudit, start, "createTransactionAuthRequest");
+			throw ex;
 		}
 	}
 
@@ -434,7 +538,7 @@ public class SimpleController {
 	 */
 	@RequestMapping(value = "regRequests", method = RequestMethod.GET, consumes = { "application/json" })
 	@ResponseStatus(value = HttpStatus.CREATED)
-	public @ResponseBody CreateRegRequestResponse createRegRequest(@RequestHeader("Session-Id") String sessionId) {
+	public @ResponseBody DeferredResult<CreateRegRequestResponse> createRegRequest(@RequestHeader("Session-Id") String sessionId) {
 
 		logger.info("***** Received a request to create a registration request for session: {}", sessionId);
 		long start = System.currentTimeMillis();
@@ -443,26 +547,25 @@ public class SimpleController {
 			Session session = this.validateSession(sessionId);
 			Account account = this.getAccountRepository().findById(session.getAccountId());
 			anAudit.setAccountId(account.getId());
-			FIDORegChallengeAndId regChallengeAndId = this.getIdentityXServices().createRegRequest(account.getEmail(), account.getIdXId());
-			if (account.getIdXId() == null) {
-				account.setIdXId(regChallengeAndId.getIdXId());
-				this.getAccountRepository().save(account);
-			} else {
-				if (!account.getIdXId().equals(regChallengeAndId.getIdXId())) {
-					String error = "The FIDO Id from the account and the FIDO ID from the FIDO server are different! - this is an error!";
-					logger.error(error);
-					throw new RuntimeException(error);
+			return this.defer(this.getAsyncIdentityXServices().createRegRequest(account.getEmail(), account.getIdXId()).thenApply(regChallengeAndId -> {
+				if (account.getIdXId() == null) {
+					account.setIdXId(regChallengeAndId.getIdXId());
+					this.getAccountRepository().save(account);
+				} else {
+					if (!account.getIdXId().equals(regChallengeAndId.getIdXId())) {
+						String error = "The FIDO Id from the account and the FIDO ID from the FIDO server are different! - this is an error!";
+						logger.error(error);
+						throw new RuntimeException(error);
+					}
 				}
-			}
-			CreateRegRequestResponse response = new CreateRegRequestResponse();
-			response.setRegistrationRequestId(regChallengeAndId.getRegistrationChallenge().getHref());
-			response.setFidoRegistrationRequest(regChallengeAndId.getRegistrationChallenge().getFidoRegistrationRequest());
-			return response;
-		} finally {
-			anAudit.setDuration(System.currentTimeMillis() - start);
-			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
-			logger.info("***** Sending response to the request to createRegRequest - duration: {}ms", (System.currentTimeMillis() - start));
+				CreateRegRequestResponse response = new CreateRegRequestResponse();
+				response.setRegistrationRequestId(regChallengeAndId.getRegistrationChallenge().getHref());
+				response.setFidoRegistrationRequest(regChallengeAndId.getRegistrationChallenge().getFidoRegistrationRequest());
+				return response;
+			}), anAudit, start, "createRegRequest");
+		} catch (RuntimeException ex) {
+			this.writeAudit(anAudit, start, "createRegRequest");
+			throw ex;
 		}
 
 	}
@@ -480,7 +583,7 @@ public class SimpleController {
 	 */
 	@RequestMapping(value = "authenticators", method = RequestMethod.POST, consumes = { "application/json" })
 	@ResponseStatus(value = HttpStatus.CREATED)
-	public @ResponseBody CreateAuthenticatorResponse createAuthenticator(@RequestHeader("Session-Id") String sessionId, @RequestBody CreateAuthenticator createAuth) {
+	public @ResponseBody DeferredResult<CreateAuthenticatorResponse> createAuthenticator(@RequestHeader("Session-Id") String sessionId, @RequestBody CreateAuthenticator createAuth) {
 
 		logger.info("***** Received request to create an authenticator for session: {}", sessionId);
 		long start = System.currentTimeMillis();
@@ -489,19 +592,18 @@ public class SimpleController {
 			Session session = this.validateSession(sessionId);
 			anAudit.setSessionId(sessionId);
 			Account account = this.getAccountRepository().findById(session.getAccountId());
-			RegistrationChallenge challenge = this.getIdentityXServices().processRegistrationResponse(account.getIdXId(), createAuth.getRegistrationChallengeId(),
-					createAuth.getFidoReqistrationResponse());
-			CreateAuthenticatorResponse response = new CreateAuthenticatorResponse();
-			response.setFidoRegistrationConfirmation(challenge.getFidoRegistrationResponse());
-			response.setFidoResponseCode(challenge.getFidoResponseCode());
-			response.setFidoResponseMsg(challenge.getFidoResponseMsg());
-			return response;
-
-		} finally {
-			anAudit.setDuration(System.currentTimeMillis() - start);
-			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
-			logger.info("***** Sending response to the request to createAuthenticator - duration: {}ms", (System.currentTimeMillis() - start));
+			return this.defer(this.getAsyncIdentityXServices().processRegistrationResponse(account.getIdXId(), createAuth.getRegistrationChallengeId(),
+					createAuth.getFidoReqistrationResponse()).thenApply(challenge -> {
+				CreateAuthenticatorResponse response = new CreateAuthenticatorResponse();
+				response.setFidoRegistrationConfirmation(challenge.getFidoRegistrationResponse());
+				response.setFidoResponseCode(challenge.getFidoResponseCode());
+				response.setFidoResponseMsg(challenge.getFidoResponseMsg());
+				return response;
+			}), anAudit, start, "createAuthenticator");
+
+		} catch (RuntimeException ex) {
+			this.writeAudit(anAudit, start, "createAuthenticator");
+			throw ex;
 		}
 	}
 
@@ -515,7 +617,7 @@ public class SimpleController {
 	 */
 	@RequestMapping(value = "authenticators/{id}", method = RequestMethod.DELETE)
 	@ResponseStatus(value = HttpStatus.OK)
-	public @ResponseBody String deleteAuthenticator(@RequestHeader("Session-Id") String sessionId, @PathVariable String id) {
+	public @ResponseBody DeferredResult<String> deleteAuthenticator(@RequestHeader("Session-Id") String sessionId, @PathVariable String id) {
 
 		logger.info("***** Received request to delete authenticator: {} for session: {} ", id, sessionId);
 		long start = System.currentTimeMillis();
@@ -524,12 +626,10 @@ public class SimpleController {
 			Session session = this.validateSession(sessionId);
 			// TODO - NEED TO CHECK THE REG CHALLENGE IS FOR THE SAME USER
 			Account account = this.getAccountRepository().findById(session.getAccountId());
-			return this.getIdentityXServices().deleteAuthenticator(account.getIdXId(), id);
-		} finally {
-			anAudit.setDuration(System.currentTimeMillis() - start);
-			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
-			logger.info("***** Sending response to the request to deleteAuthenticator - duration: {}ms", (System.currentTimeMillis() - start));
+			return this.defer(this.getAsyncIdentityXServices().deleteAuthenticator(account.getIdXId(), id), anAudit, start, "deleteAuthenticator");
+		} catch (RuntimeException ex) {
+			this.writeAudit(anAudit, start, "deleteAuthenticator");
+			throw ex;
 		}
 	}
 
@@ -542,7 +642,7 @@ public class SimpleController {
 	 */
 	@RequestMapping(value = "listAuthenticators", method = RequestMethod.GET, consumes = { "application/json" })
 	@ResponseStatus(value = HttpStatus.OK)
-	public @ResponseBody ListAuthenticatorsResponse listAuthenticators(@RequestHeader("Session-Id") String sessionId) {
+	public @ResponseBody DeferredResult<ListAuthenticatorsResponse> listAuthenticators(@RequestHeader("Session-Id") String sessionId) {
 
 		logger.info("***** Received request to list authenticators for the account associated with session: {} ", sessionId);
 		long start = System.currentTimeMillis();
@@ -551,15 +651,14 @@ public class SimpleController {
 			Session session = this.validateSession(sessionId);
 			Account account = this.getAccountRepository().findById(session.getAccountId());
 			anAudit.setAccountId(account.getId());
-			AuthenticatorInfo[] authenticatorInfos = this.getIdentityXServices().listAuthenticators(account.getIdXId());
-			ListAuthenticatorsResponse response = new ListAuthenticatorsResponse();
-			response.setAuthenticatorInfoList(authenticatorInfos);
-			return response;
-		} finally {
-			anAudit.setDuration(System.currentTimeMillis() - start);
-			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
-			logger.info("***** Sending response to the request to listAuthenticators - duration: {}ms", (System.currentTimeMillis() - start));
+			return this.defer(this.getAsyncIdentityXServices().listAuthenticators(account.getIdXId()).thenApply(authenticatorInfos -> {
+				ListAuthenticatorsResponse response = new ListAuthenticatorsResponse();
+				response.setAuthenticatorInfoList(authenticatorInfos);
+				return response;
+			}), anAudit, start, "listAuthenticators");
+		} catch (RuntimeException ex) {
+			this.writeAudit(anAudit, start, "listAuthenticators");
+			throw ex;
 		}
 	}
 
@@ -573,7 +672,7 @@ public class SimpleController {
 	 */
 	@RequestMapping(value = "authenticators/{id}", method = RequestMethod.GET, consumes = { "application/json" })
 	@ResponseStatus(value = HttpStatus.OK)
-	public @ResponseBody GetAuthenticatorResponse getAuthenticator(@RequestHeader("Session-Id") String sessionId, @PathVariable("id") String id) {
+	public @ResponseBody DeferredResult<GetAuthenticatorResponse> getAuthenticator(@RequestHeader("Session-Id") String sessionId, @PathVariable("id") String id) {
 
 		logger.info("***** Received request to get the authenticator; {} for session: {} ", id, sessionId);
 		long start = System.currentTimeMillis();
@@ -582,15 +681,14 @@ public class SimpleController {
 			Session session = this.validateSession(sessionId);
 			Account account = this.getAccountRepository().findById(session.getAccountId());
 			anAudit.setAccountId(account.getId());
-			AuthenticatorInfo authenticatorInfo = this.getIdentityXServices().getAuthenticator(account.getIdXId(), id);
-			GetAuthenticatorResponse response = new GetAuthenticatorResponse();
-			response.setAuthenticatorInfo(authenticatorInfo);
-			return response;
-		} finally {
-			anAudit.setDuration(System.currentTimeMillis() - start);
-			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
-			logger.info("***** Sending response to the request to getAuthenticator - duration: {}ms", (System.currentTimeMillis() - start));
+			return this.defer(this.getAsyncIdentityXServices().getAuthenticator(account.getIdXId(), id).thenApply(authenticatorInfo -> {
+				GetAuthenticatorResponse response = new GetAuthenticatorResponse();
+				response.setAuthenticatorInfo(authenticatorInfo);
+				return response;
+			}), anAudit, start, "getAuthenticator");
+		} catch (RuntimeException ex) {
+			this.writeAudit(anAudit, start, "getAuthenticator");
+			throw ex;
 		}
 	}
 
@@ -607,9 +705,9 @@ public class SimpleController {
 			anAudit.setAccountId(account.getId());
 			GetPolicyResponse res = new GetPolicyResponse();
 			if (id.equalsIgnoreCase("reg")) {
-				res.setPolicyInfo(getIdentityXServices().getRegistrationPolicyInfo());
+				res.setPolicyInfo(getPolicyCache().getRegistrationPolicyInfo());
 			} else if (id.equalsIgnoreCase("auth")) {
-				res.setPolicyInfo(getIdentityXServices().getAuthenticationPolicyInfo());
+				res.setPolicyInfo(getPolicyCache().getAuthenticationPolicyInfo());
 			} else {
 				throw new HttpClientErrorException(HttpStatus.NOT_FOUND, "Policy " + id);
 			}
@@ -617,11 +715,54 @@ public class SimpleController {
 		} finally {
 			anAudit.setDuration(System.currentTimeMillis() - start);
 			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
+			this.getAuditWriter().write(anAudit);
 			logger.info("***** Sending response to the request to getPolicy - duration: {}ms", (System.currentTimeMillis() - start));
 		}
 	}
 
+	/***
+	 * Return a DeferredResult which is set once the response is complete so that the request thread
+	 * is not held while IdentityX responds.  The audit record is written when the response completes.
+	 * 
+	 * @param response
+	 * @param anAudit
+	 * @param start
+	 * @param operation
+	 * @return
+	 */
+	protected <T> DeferredResult<T> defer(CompletableFuture<T> response, Audit anAudit, long start, String operation) {
+
+		DeferredResult<T> result = new DeferredResult<>(asyncTimeout);
+		result.onTimeout(() -> {
+			logger.error("The request to {} did not complete within {}ms", operation, asyncTimeout);
+			result.setErrorResult(new ServerBusyException(Error.SERVER_BUSY));
+		});
+		response.whenComplete((value, ex) -> {
+			this.writeAudit(anAudit, start, operation);
+			if (ex == null) {
+				result.setResult(value);
+			} else {
+				result.setErrorResult(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+			}
+		});
+		return result;
+	}
+
+	/***
+	 * Complete the audit record of the request and write it
+	 * 
+	 * @param anAudit
+	 * @param start
+	 * @param operation
+	 */
+	protected void writeAudit(Audit anAudit, long start, String operation) {
+
+		anAudit.setDuration(System.currentTimeMillis() - start);
+		anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
+		this.getAuditWriter().write(anAudit);
+		logger.info("***** Sending response to the request to {} - duration: {}ms", operation, (System.currentTimeMillis() - start));
+	}
+
 	/***
 	 * Validate the session to ensure there is a session with the provided ID and the session has not expired
 	 * 
@@ -631,7 +772,7 @@ public class SimpleController {
 	protected Session validateSession(String sessionId) {
 
 		logger.debug("Attempting to validate the session: {}", sessionId);
-		Session session = this.getSessionRepository().findById(sessionId);
+		Session session = this.getSessionStore().findById(sessionId);
 		if (session == null) {
 			logger.error("No session found for ID: {}", sessionId );
 			throw new ProcessingException(Error.UNKNOWN_SESSION_IDENTIFIER);
@@ -642,8 +783,7 @@ public class SimpleController {
 			throw new ProcessingException(Error.EXPIRED_SESSION);
 		}
 
-		session.setExpiringDTM(new Timestamp(System.currentTimeMillis() + Session.DEFAULT_SESSION_PERIOD));
-		this.getSessionRepository().save(session);
+		this.getSessionStore().extend(session, sessionPeriod);
 		logger.debug("Updated the session: {} and extended the timeout period.", sessionId);
 		return session;
 	}
@@ -677,11 +817,10 @@ public class SimpleController {
 		sessionResponse.setEmail(account.getEmail());
 		sessionResponse.setFirstName(account.getFirstName());
 		sessionResponse.setLastName(account.getLastName());
-		sessionResponse.setLastLoggedIn(account.getLastLoggedIn());
+		sessionResponse.setLastLoggedIn(this.getLastLoginWriter().getLastLoggedIn(account));
 
 		// Update last login time
-		account.setLastLoggedIn(new Timestamp(System.currentTimeMillis()));
-		this.getAccountRepository().save(account);
+		this.getLastLoginWriter().record(account, new Timestamp(System.currentTimeMillis()));
 
 		logger.debug("Session created for account: {}, session ID created at: {}", account.getEmail(), sessionResponse.getSessionId());
 		return sessionResponse;
@@ -712,9 +851,9 @@ public class SimpleController {
 			sessionResponse.setFidoResponseMsg(authRequest.getFidoResponseMsg());
 
 		} else {
-			Account account = this.getAccountRepository().findByEmail(authRequest.getUser().getUserId());
+			Account account = this.findAccount(authRequest.getUser());
 			if (account == null) {
-				logger.error("Cannot create a session as there is no account with the email address: {}", authRequest.getUser().getUserId());
+				logger.error("Cannot create a session as there is no account for the IdentityX user: {}", authRequest.getUser().getId());
 				throw new ProcessingException(Error.FIDO_AUTH_COMPLETE_ACCOUNT_NOT_FOUND);
 			}
 
@@ -725,17 +864,37 @@ public class SimpleController {
 			sessionResponse.setFidoAuthenticationResponse(authRequest.getFidoAuthenticationResponse());
 			sessionResponse.setFidoResponseCode(authRequest.getFidoResponseCode());
 			sessionResponse.setFidoResponseMsg(authRequest.getFidoResponseMsg());
-			sessionResponse.setLastLoggedIn(account.getLastLoggedIn());
+			sessionResponse.setLastLoggedIn(this.getLastLoginWriter().getLastLoggedIn(account));
 
 			// Update last login time
-			account.setLastLoggedIn(new Timestamp(System.currentTimeMillis()));
-			this.getAccountRepository().save(account);
+			this.getLastLoginWriter().record(account, new Timestamp(System.currentTimeMillis()));
 		}
 
 		logger.debug("Session created for account: {}, session ID created at: {}", sessionResponse.getEmail(), sessionResponse.getSessionId());
 		return sessionResponse;
 	}
 
+	/***
+	 * Find the account of the IdentityX user.  The account is found by the IdentityX ID and
+	 * only if no account has the ID is it found by the email address, which is retrieved from
+	 * IdentityX if the user does not hold it.
+	 * 
+	 * @param user
+	 * @return the account or null
+	 */
+	protected Account findAccount(User user) {
+
+		Account account = this.getAccountRepository().findByIdXId(user.getId());
+		if (account != null) {
+			return account;
+		}
+		String email = user.getUserId();
+		if (email == null) {
+			email = this.getIdentityXServices().getUserEmail(user.getId());
+		}
+		return email == null ? null : this.getAccountRepository().findByEmail(email);
+	}
+
 	/***
 	 * Create a session for the given account
 	 * 
@@ -745,7 +904,7 @@ public class SimpleController {
 	 */
 	protected CreateSessionResponse createSession(Account account, AuthenticationMethod authMethod) {
 		Session session = new Session(account, sessionPeriod);
-		this.getSessionRepository().save(session);
+		this.getSessionStore().create(session);
 		CreateSessionResponse response = new CreateSessionResponse();
 		response.setSessionId(session.getId());
 		response.setLoggedInWith(authMethod);
@@ -753,23 +912,28 @@ public class SimpleController {
 	}
 
 	/***
-	 * Hash the password for the given account
+	 * Hash the password for the given credential with the current algorithm and cost
 	 * 
-	 * @param account
+	 * @param credential
 	 * @param password
 	 */
-	protected void createHash(Account account, String password) {
+	protected void createHash(AccountCredential credential, String password) {
 
+		PasswordHashAlgorithm algorithm = this.getPasswordHashPolicy().getAlgorithm();
+		int cost = this.getPasswordHashPolicy().getCost();
 		byte[] salt = this.getRandomSalt();
-		byte[] hashedPassword = this.hash(password, BASE_ITERATION_NUMBER, salt);
-		account.setHashedPassword(hashedPassword);
-		account.setIterations(BASE_ITERATION_NUMBER);
-		account.setSalt(salt);
+		byte[] hashedPassword = this.hash(algorithm, password, cost, salt);
+		credential.setHashedPassword(hashedPassword);
+		credential.setHashAlgorithm(algorithm);
+		credential.setIterations(cost);
+		credential.setSalt(salt);
 	}
 
 
 	/***
-	 * Validate the password provided against that of the account
+	 * Validate the password provided against that of the account.
+	 * If the password is valid but the account's hash uses an old algorithm or a lower cost
+	 * the password is hashed again with the current settings and saved.
 	 * 
 	 * @param account
 	 * @param password
@@ -777,37 +941,40 @@ public class SimpleController {
 	 */
 	protected boolean validatePassword(Account account, String password) {
 
-		byte[] salt = account.getSalt();
-		int iterationCount = account.getIterations();
-		byte[] hashedPassword = this.hash(password, iterationCount, salt);
-		return Arrays.equals(account.getHashedPassword(), hashedPassword);
+		AccountCredential credential = this.getAccountCredentialRepository().findOne(account.getId());
+		if (credential == null) {
+			logger.error("There is no password for the account: {}", account.getId());
+			return false;
+		}
+		byte[] salt = credential.getSalt();
+		int iterationCount = credential.getIterations();
+		PasswordHashAlgorithm algorithm = credential.getHashAlgorithm() == null ? PasswordHashAlgorithm.SHA256_ITERATED : credential.getHashAlgorithm();
+		byte[] hashedPassword = this.hash(algorithm, password, iterationCount, salt);
+		if (!Arrays.equals(credential.getHashedPassword(), hashedPassword)) {
+			return false;
+		}
+		if (this.getPasswordHashPolicy().needsRehash(credential)) {
+			logger.debug("Upgrading the password hash for account: {} from {} with a cost of {}", account.getId(), algorithm, iterationCount);
+			this.createHash(credential, password);
+			this.getAccountCredentialRepository().save(credential);
+		}
+		return true;
 	}
 
 
 	/***
-	 * Hash the password with the salt and for the given number of iterations
+	 * Hash the password with the algorithm, the salt and for the given number of iterations.
+	 * The hash is computed on the password hashing pool rather than the request thread.
 	 * 
+	 * @param algorithm
 	 * @param password
 	 * @param iterationCount
 	 * @param salt
 	 * @return
 	 */
-	protected byte[] hash(String password, int iterationCount, byte[] salt) {
+	protected byte[] hash(PasswordHashAlgorithm algorithm, String password, int iterationCount, byte[] salt) {
 
-		try {
-			MessageDigest digest = MessageDigest.getInstance("SHA-256");
-			digest.reset();
-			digest.update(salt);
-			byte[] input = digest.digest(password.getBytes("UTF-8"));
-			for (int i = 0; i < iterationCount; i++) {
-				digest.reset();
-				input = digest.digest(input);
-			}
-			return input;
-		} catch (Exception e) {
-			logger.error("An exception occurred while attempting to hash the password", e);
-			throw new RuntimeException(e);
-		}
+		return this.getPasswordHashingExecutor().execute(() -> this.getPasswordHashEngine().hash(algorithm, password, iterationCount, salt));
 	}
 
 	/***
@@ -845,20 +1012,44 @@ public class SimpleController {
 		this.accountRepository = accountRepository;
 	}
 
-	public AuditRepository getAuditRepository() {
-		return auditRepository;
+	public AccountCredentialRepository getAccountCredentialRepository() {
+		return accountCredentialRepository;
+	}
+
+	public void setAccountCredentialRepository(AccountCredentialRepository accountCredentialRepository) {
+		this.accountCredentialRepository = accountCredentialRepository;
+	}
+
+	public PlatformTransactionManager getTransactionManager() {
+		return transactionManager;
+	}
+
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
+	public LastLoginWriter getLastLoginWriter() {
+		return lastLoginWriter;
+	}
+
+	public void setLastLoginWriter(LastLoginWriter lastLoginWriter) {
+		this.lastLoginWriter = lastLoginWriter;
 	}
 
-	public void setAuditRepository(AuditRepository auditRepository) {
-		this.auditRepository = auditRepository;
+	public IAuditWriter getAuditWriter() {
+		return auditWriter;
 	}
 
-	public SessionRepository getSessionRepository() {
-		return sessionRepository;
+	public void setAuditWriter(IAuditWriter auditWriter) {
+		this.auditWriter = auditWriter;
 	}
 
-	public void setSessionRepository(SessionRepository sessionRepository) {
-		this.sessionRepository = sessionRepository;
+	public ISessionStore getSessionStore() {
+		return sessionStore;
+	}
+
+	public void setSessionStore(ISessionStore sessionStore) {
+		this.sessionStore = sessionStore;
 	}
 
 	public IIdentityXServices getIdentityXServices() {
@@ -869,4 +1060,52 @@ public class SimpleController {
 		this.identityXServices = identityXServices;
 	}
 
+	public PasswordHashingExecutor getPasswordHashingExecutor() {
+		return passwordHashingExecutor;
+	}
+
+	public void setPasswordHashingExecutor(PasswordHashingExecutor passwordHashingExecutor) {
+		this.passwordHashingExecutor = passwordHashingExecutor;
+	}
+
+	public PasswordHashEngine getPasswordHashEngine() {
+		return passwordHashEngine;
+	}
+
+	public void setPasswordHashEngine(PasswordHashEngine passwordHashEngine) {
+		this.passwordHashEngine = passwordHashEngine;
+	}
+
+	public PasswordHashPolicy getPasswordHashPolicy() {
+		return passwordHashPolicy;
+	}
+
+	public void setPasswordHashPolicy(PasswordHashPolicy passwordHashPolicy) {
+		this.passwordHashPolicy = passwordHashPolicy;
+	}
+
+	public IAsyncIdentityXServices getAsyncIdentityXServices() {
+		return asyncIdentityXServices;
+	}
+
+	public void setAsyncIdentityXServices(IAsyncIdentityXServices asyncIdentityXServices) {
+		this.asyncIdentityXServices = asyncIdentityXServices;
+	}
+
+	public FidoFacetsCache getFidoFacetsCache() {
+		return fidoFacetsCache;
+	}
+
+	public void setFidoFacetsCache(FidoFacetsCache fidoFacetsCache) {
+		this.fidoFacetsCache = fidoFacetsCache;
+	}
+
+	public PolicyCache getPolicyCache() {
+		return policyCache;
+	}
+
+	public void setPolicyCache(PolicyCache policyCache) {
+		this.policyCache = policyCache;
+	}
+
 }
\ No newline at end of file
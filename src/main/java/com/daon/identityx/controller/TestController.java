@@ -17,6 +17,7 @@
 package com.daon.identityx.controller;
 
 import java.sql.Timestamp;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,13 +33,16 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+import com.daon.identityx.audit.IAuditWriter;
 import com.daon.identityx.controller.model.Error;
+import com.daon.identityx.controller.model.PolicyInfo;
 import com.daon.identityx.entity.Account;
 import com.daon.identityx.entity.Audit;
 import com.daon.identityx.entity.AuditAction;
 import com.daon.identityx.entity.Session;
 import com.daon.identityx.exception.ProcessingException;
 import com.daon.identityx.fido.IIdentityXServices;
+import com.daon.identityx.fido.PolicyCache;
 import com.daon.identityx.repository.AccountRepository;
 import com.daon.identityx.repository.AuditRepository;
 import com.daon.identityx.repository.SessionRepository;
@@ -64,9 +68,13 @@ public class TestController {
 	@Autowired
 	private AuditRepository auditRepository;
 	@Autowired
+	private IAuditWriter auditWriter;
+	@Autowired
 	private SessionRepository sessionRepository;
 	@Autowired
 	private IIdentityXServices fidoServices;
+	@Autowired
+	private PolicyCache policyCache;
 
 	/***
 	 * If an exception of type ProcessingException is caught, get the Error from it and return that to the caller 
@@ -123,7 +131,7 @@ public class TestController {
 		} finally {
 			anAudit.setDuration(System.currentTimeMillis() - start);
 			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
+			this.getAuditWriter().write(anAudit);
 		}
 	}
 
@@ -152,7 +160,7 @@ public class TestController {
 		} finally {
 			anAudit.setDuration(System.currentTimeMillis() - start);
 			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
+			this.getAuditWriter().write(anAudit);
 		}
 	}
 
@@ -180,7 +188,7 @@ public class TestController {
 		} finally {
 			anAudit.setDuration(System.currentTimeMillis() - start);
 			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
+			this.getAuditWriter().write(anAudit);
 		}
 	}
 
@@ -209,7 +217,7 @@ public class TestController {
 		} finally {
 			anAudit.setDuration(System.currentTimeMillis() - start);
 			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
+			this.getAuditWriter().write(anAudit);
 		}
 	}
 
@@ -233,7 +241,29 @@ public class TestController {
 		} finally {
 			anAudit.setDuration(System.currentTimeMillis() - start);
 			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
-			this.getAuditRepository().save(anAudit);
+			this.getAuditWriter().write(anAudit);
+		}
+	}
+
+	/***
+	 * UNPROTECTED OPERATION - No session is required to perform this operation
+	 * This operation is only to allow for testing with an UNAUTHENTICATED REST client.
+	 * Reloads the cached policies from IdentityX after a policy has been changed.
+	 * 
+	 * @return the reloaded policies
+	 */
+	@RequestMapping(value = "policies/reload", method = RequestMethod.POST)
+	@ResponseStatus(value = HttpStatus.OK)
+	public @ResponseBody List<PolicyInfo> reloadPolicies() {
+
+		long start = System.currentTimeMillis();
+		Audit anAudit = new Audit(AuditAction.RELOAD_POLICIES);
+		try {
+			return this.getPolicyCache().reload();
+		} finally {
+			anAudit.setDuration(System.currentTimeMillis() - start);
+			anAudit.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
+			this.getAuditWriter().write(anAudit);
 		}
 	}
 
@@ -254,6 +284,14 @@ public class TestController {
 		this.auditRepository = auditRepository;
 	}
 
+	public IAuditWriter getAuditWriter() {
+		return auditWriter;
+	}
+
+	public void setAuditWriter(IAuditWriter auditWriter) {
+		this.auditWriter = auditWriter;
+	}
+
 	public SessionRepository getSessionRepository() {
 		return sessionRepository;
 	}
@@ -270,4 +308,12 @@ public class TestController {
 		this.fidoServices = fidoServices;
 	}
 
+	public PolicyCache getPolicyCache() {
+		return policyCache;
+	}
+
+	public void setPolicyCache(PolicyCache policyCache) {
+		this.policyCache = policyCache;
+	}
+
 }
\ No newline at end of file
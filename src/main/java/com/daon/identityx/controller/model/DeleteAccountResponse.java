@@ -18,6 +18,8 @@ package com.daon.identityx.controller.model;
 
 /***
  * The response to the request to delete an account.
+ * If not every FIDO authenticator of the account could be deactivated the account is not deleted
+ * - the client must still process the deregistration requests and can then retry the delete.
  * 
  * @author Daon
  *
@@ -25,6 +27,7 @@ package com.daon.identityx.controller.model;
 public class DeleteAccountResponse {
 
 	private AuthenticatorInfo[] fidoDeregistrationRequests;
+	private boolean accountDeleted;
 	
 	public DeleteAccountResponse() {
 	}
@@ -37,4 +40,12 @@ public class DeleteAccountResponse {
 		this.fidoDeregistrationRequests = fidoDeregistrationRequests;
 	}
 
+	public boolean isAccountDeleted() {
+		return accountDeleted;
+	}
+
+	public void setAccountDeleted(boolean accountDeleted) {
+		this.accountDeleted = accountDeleted;
+	}
+
 }
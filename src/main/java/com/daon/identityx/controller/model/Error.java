@@ -28,6 +28,8 @@ public class Error {
 
 	public static Error UNEXPECTED_ERROR = new Error(1,"An unexpected error occurred.  Please see the log files.");
 	public static Error METHOD_NOT_IMPLEMENTED = new Error(2,"The method has not been implemented");
+	public static Error SERVER_BUSY = new Error(3,"The server is too busy to process the request - please retry later");
+	public static Error IDENTITYX_UNAVAILABLE = new Error(4,"The FIDO server is not available - please retry later");
 	
 	public static Error ACCOUNT_NOT_FOUND = new Error(10,"Account not found");
 	public static Error INVALID_CREDENTIALS = new Error(11,"Invalid credentials provided - the user could not be authenticated");
@@ -0,0 +1,114 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/***
+ * Sizes and configures the Tomcat JDBC connection pool behind the datasource.
+ *
+ * The pool size is only changed if one is configured, otherwise the pool keeps its own size
+ * (spring.datasource.max-active, 100 if not set).  The pool is not sized for every request
+ * thread - in the DataSourcePoolBenchmark a connection for each of 200 threads made the
+ * statements wait in the database instead of in the pool and was slower.
+ *
+ * Each connection caches its prepared statements so that the statements run on every request,
+ * such as the audit and session inserts, are parsed once per connection.  The statement cache
+ * size is the number of statements cached across the whole pool.  If statement timing is
+ * enabled the StatementTimingInterceptor is added after the statement cache.
+ *
+ * The pool is configured before the datasource is initialised and so before the pool is
+ * created, but after the spring.datasource properties have been bound so these settings take
+ * precedence.
+ *
+ * @author Daon
+ *
+ */
+@Component
+public class DataSourcePoolConfigurer implements BeanPostProcessor {
+
+	private static final Logger logger = LoggerFactory.getLogger(DataSourcePoolConfigurer.class);
+
+	@Value("${fido.datasource.pool_size:0}")
+	private int poolSize;
+	@Value("${fido.datasource.min_idle:10}")
+	private int minIdle;
+	@Value("${fido.datasource.max_wait:5000}")
+	private int maxWait;
+	@Value("${fido.datasource.statement_cache_size:1000}")
+	private int statementCacheSize;
+	@Value("${fido.datasource.statement_timing:true}")
+	private boolean statementTiming;
+
+	public DataSourcePoolConfigurer() {
+	}
+
+	@Override
+	public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+
+		if (bean instanceof org.apache.tomcat.jdbc.pool.DataSource) {
+			this.configure((org.apache.tomcat.jdbc.pool.DataSource) bean);
+		}
+		return bean;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		return bean;
+	}
+
+	/***
+	 * Size the pool and add the statement cache and statement timing interceptors
+	 *
+	 * @param dataSource
+	 */
+	protected void configure(org.apache.tomcat.jdbc.pool.DataSource dataSource) {
+
+		if (poolSize > 0) {
+			dataSource.setMaxActive(poolSize);
+			dataSource.setMaxIdle(poolSize);
+		}
+		int size = dataSource.getMaxActive();
+		dataSource.setMinIdle(Math.min(minIdle, size));
+		dataSource.setInitialSize(Math.min(minIdle, size));
+		dataSource.setMaxWait(maxWait);
+
+		StringBuilder interceptors = new StringBuilder();
+		if (dataSource.getJdbcInterceptors() != null && dataSource.getJdbcInterceptors().trim().length() > 0) {
+			interceptors.append(dataSource.getJdbcInterceptors().trim()).append(';');
+		}
+		if (statementCacheSize > 0) {
+			interceptors.append("StatementCache(prepared=true,callable=false,max=").append(statementCacheSize).append(");");
+		}
+		if (statementTiming) {
+			interceptors.append(StatementTimingInterceptor.class.getName()).append(';');
+		}
+		dataSource.setJdbcInterceptors(interceptors.toString());
+		logger.info("Configured the connection pool - size: {}, min idle: {}, max wait: {}ms, statement cache size: {}, statement timing: {}",
+				size, dataSource.getMinIdle(), maxWait, statementCacheSize, statementTiming);
+	}
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+}
@@ -0,0 +1,170 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.datasource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+/***
+ * Collects the time taken by the statements run through the connection pool.
+ *
+ * The statements are timed by the StatementTimingInterceptor.  The pool creates its
+ * interceptors itself, rather than through Spring, so the interceptor reports to the
+ * instance registered here when this service starts.  The statements are grouped by their
+ * kind - select, insert, update, delete, merge or other - and for each kind the number run,
+ * the number which failed, the mean and the longest time since the metrics were last read are
+ * published.  A statement slower than the slow statement threshold is logged.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class StatementMetrics implements PublicMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(StatementMetrics.class);
+
+	private static final String[] KINDS = { "select", "insert", "update", "delete", "merge" };
+	private static final String OTHER = "other";
+
+	private static volatile StatementMetrics instance;
+
+	@Value("${fido.datasource.slow_statement:1000}")
+	private long slowStatement;
+
+	private final Map<String, StatementStats> stats = new ConcurrentHashMap<>();
+
+	public StatementMetrics() {
+	}
+
+	@PostConstruct
+	public void start() {
+
+		instance = this;
+		logger.info("Started the statement metrics - slow statement threshold: {}ms", slowStatement);
+	}
+
+	@PreDestroy
+	public void stop() {
+
+		if (instance == this) {
+			instance = null;
+		}
+	}
+
+	/***
+	 * Get the instance the statements are reported to
+	 *
+	 * @return the instance or null if it has not started
+	 */
+	public static StatementMetrics getInstance() {
+		return instance;
+	}
+
+	/***
+	 * Record that the statement was run
+	 *
+	 * @param sql
+	 * @param nanos
+	 * @param failed
+	 */
+	public void record(String sql, long nanos, boolean failed) {
+
+		StatementStats statementStats = stats.computeIfAbsent(this.getKind(sql), kind -> new StatementStats());
+		statementStats.count.increment();
+		statementStats.totalNanos.add(nanos);
+		if (failed) {
+			statementStats.failures.increment();
+		}
+		statementStats.maxNanos.accumulateAndGet(nanos, Math::max);
+		if (nanos > TimeUnit.MILLISECONDS.toNanos(slowStatement)) {
+			logger.warn("A statement took {}ms: {}", TimeUnit.NANOSECONDS.toMillis(nanos), sql);
+		}
+	}
+
+	/***
+	 * Get the kind of the statement from the first word of its SQL
+	 *
+	 * @param sql
+	 * @return
+	 */
+	protected String getKind(String sql) {
+
+		if (sql == null) {
+			return OTHER;
+		}
+		String trimmed = sql.trim();
+		for (String kind : KINDS) {
+			if (trimmed.regionMatches(true, 0, kind, 0, kind.length())) {
+				return kind;
+			}
+		}
+		return OTHER;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+
+		List<Metric<?>> metrics = new ArrayList<>();
+		for (Map.Entry<String, StatementStats> entry : stats.entrySet()) {
+			String prefix = "datasource.statement." + entry.getKey();
+			StatementStats statementStats = entry.getValue();
+			long count = statementStats.count.sum();
+			double mean = count == 0 ? 0 : statementStats.totalNanos.sum() / (double) count / 1000000;
+			metrics.add(new Metric<Long>(prefix + ".count", count));
+			metrics.add(new Metric<Long>(prefix + ".failures", statementStats.failures.sum()));
+			metrics.add(new Metric<Double>(prefix + ".mean", mean));
+			metrics.add(new Metric<Double>(prefix + ".max", statementStats.maxNanos.getAndSet(0) / 1000000d));
+		}
+		return metrics;
+	}
+
+	public long getSlowStatement() {
+		return slowStatement;
+	}
+
+	public void setSlowStatement(long slowStatement) {
+		this.slowStatement = slowStatement;
+	}
+
+	/***
+	 * The counts and times of one kind of statement
+	 */
+	private static class StatementStats {
+
+		private final LongAdder count = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+	}
+}
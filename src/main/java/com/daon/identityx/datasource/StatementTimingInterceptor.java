@@ -0,0 +1,99 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.apache.tomcat.jdbc.pool.interceptor.AbstractCreateStatementInterceptor;
+
+/***
+ * A connection pool interceptor which times each statement run through the pool and reports
+ * the time to the StatementMetrics.
+ *
+ * Each statement created by a connection is wrapped in a proxy which times the execute calls,
+ * including the execution of a batch, with the SQL of the statement.  The interceptor is placed
+ * after the statement cache in the pool so a cached statement keeps its proxy.
+ *
+ * @author Daon
+ *
+ */
+public class StatementTimingInterceptor extends AbstractCreateStatementInterceptor {
+
+	public StatementTimingInterceptor() {
+	}
+
+	@Override
+	public Object createStatement(Object proxy, Method method, Object[] args, Object statement, long time) {
+
+		String sql = (args != null && args.length > 0 && args[0] instanceof String) ? (String) args[0] : null;
+		return Proxy.newProxyInstance(StatementTimingInterceptor.class.getClassLoader(), new Class<?>[] { method.getReturnType() },
+				new TimedStatement(statement, sql));
+	}
+
+	@Override
+	public void closeInvoked() {
+	}
+
+	/***
+	 * Times the execute calls made on the statement
+	 */
+	protected class TimedStatement implements InvocationHandler {
+
+		private final Object delegate;
+		private final String sql;
+
+		TimedStatement(Object delegate, String sql) {
+			this.delegate = delegate;
+			this.sql = sql;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+			StatementMetrics metrics = StatementMetrics.getInstance();
+			if (metrics == null || !isExecute(method, false)) {
+				return this.call(method, args);
+			}
+			String executed = sql;
+			if (executed == null && args != null && args.length > 0 && args[0] instanceof String) {
+				executed = (String) args[0];
+			}
+			long start = System.nanoTime();
+			boolean failed = true;
+			try {
+				Object result = this.call(method, args);
+				failed = false;
+				return result;
+			} finally {
+				metrics.record(executed, System.nanoTime() - start, failed);
+			}
+		}
+
+		protected Object call(Method method, Object[] args) throws Throwable {
+
+			try {
+				return method.invoke(delegate, args);
+			} catch (InvocationTargetException ex) {
+				throw ex.getCause();
+			}
+		}
+	}
+}
@@ -26,10 +26,9 @@ import javax.persistence.Id;
 import org.hibernate.annotations.GenericGenerator;
 
 import com.daon.identityx.controller.model.CreateAccount;
-import com.fasterxml.jackson.annotation.JsonIgnore;
 
 /***
- * The class to represent an account.
+ * The class to represent an account.  The password hash is held in the AccountCredential.
  * 
  * @author Daon
  *
@@ -45,10 +44,6 @@ public class Account {
     private String lastName;
     @Column(unique = true, columnDefinition="VARCHAR_IGNORECASE(255)") 
     private String email;
-    @JsonIgnore
-    private byte[] hashedPassword;
-    private int iterations;
-    private byte[] salt;
     private Timestamp lastLoggedIn;
     private String idXId;
     
@@ -65,6 +60,21 @@ public class Account {
         this.createdDTM = new Timestamp(System.currentTimeMillis());
     }
 
+    /***
+     * Create a copy of the account so that a cached account is not changed by its readers
+     * 
+     * @param account
+     */
+    public Account(Account account) {
+        this.id = account.id;
+        this.firstName = account.firstName;
+        this.lastName = account.lastName;
+        this.email = account.email;
+        this.lastLoggedIn = account.lastLoggedIn;
+        this.idXId = account.idXId;
+        this.createdDTM = account.createdDTM;
+    }
+
 	public String getId() {
 		return id;
 	}
@@ -105,30 +115,6 @@ public class Account {
 		this.createdDTM = createdDTM;
 	}
 
-	public int getIterations() {
-		return iterations;
-	}
-
-	public void setIterations(int iterations) {
-		this.iterations = iterations;
-	}
-
-	public byte[] getSalt() {
-		return salt;
-	}
-
-	public void setSalt(byte[] salt) {
-		this.salt = salt;
-	}
-
-	public byte[] getHashedPassword() {
-		return hashedPassword;
-	}
-
-	public void setHashedPassword(byte[] hashedPassword) {
-		this.hashedPassword = hashedPassword;
-	}
-
 	public Timestamp getLastLoggedIn() {
 		return lastLoggedIn;
 	}
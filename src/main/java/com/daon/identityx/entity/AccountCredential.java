@@ -0,0 +1,90 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.entity;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+
+/***
+ * The password hash of an account.  It is kept apart from the Account so that only a
+ * password login reads the salt and the hash.
+ * 
+ * @author Daon
+ *
+ */
+@Entity
+public class AccountCredential {
+
+    @Id
+    private String accountId;
+    @Enumerated(EnumType.STRING)
+    private PasswordHashAlgorithm hashAlgorithm;
+    private int iterations;
+    @Column(columnDefinition="BINARY(32)")
+    private byte[] salt;
+    @Column(columnDefinition="BINARY(32)")
+    private byte[] hashedPassword;
+
+    public AccountCredential() {
+    	
+    }
+
+	public String getAccountId() {
+		return accountId;
+	}
+
+	public void setAccountId(String accountId) {
+		this.accountId = accountId;
+	}
+
+	public PasswordHashAlgorithm getHashAlgorithm() {
+		return hashAlgorithm;
+	}
+
+	public void setHashAlgorithm(PasswordHashAlgorithm hashAlgorithm) {
+		this.hashAlgorithm = hashAlgorithm;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	public byte[] getSalt() {
+		return salt;
+	}
+
+	public void setSalt(byte[] salt) {
+		this.salt = salt;
+	}
+
+	public byte[] getHashedPassword() {
+		return hashedPassword;
+	}
+
+	public void setHashedPassword(byte[] hashedPassword) {
+		this.hashedPassword = hashedPassword;
+	}
+
+}
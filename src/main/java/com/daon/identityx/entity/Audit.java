@@ -23,6 +23,9 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 
 import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import com.daon.identityx.utils.IdGenerator;
 
 /***
  * A simple audit record - each REST interaction is recorded in the database with an Audit record.
@@ -35,7 +38,8 @@ public class Audit {
 
     @Id
 	@GeneratedValue(generator="idGenerator")
-	@GenericGenerator(name="idGenerator", strategy="com.daon.identityx.utils.IdGenerator")
+	@GenericGenerator(name="idGenerator", strategy="com.daon.identityx.utils.IdGenerator",
+			parameters=@Parameter(name=IdGenerator.TIME_ORDERED, value="true"))
     private String id;
     private AuditAction operation;
     private String accountId;
@@ -42,5 +42,6 @@ public enum AuditAction {
 	DELETE_AUTHENTICATOR,
 	CREATE_TRANSACTION_AUTH_REQUEST,
 	VALIDATE_TRANSACTION_AUTH,
-	GET_POLICY
+	GET_POLICY,
+	RELOAD_POLICIES
 }
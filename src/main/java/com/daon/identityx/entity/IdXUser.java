@@ -0,0 +1,96 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.entity;
+
+import java.sql.Timestamp;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/***
+ * The IdentityX user and registration which were found or created for an email address, so
+ * that further registration requests for the user can go straight to IdentityX with the
+ * registration's href.
+ * 
+ * @author Daon
+ *
+ */
+@Entity
+public class IdXUser {
+
+    @Id
+    @Column(columnDefinition="VARCHAR_IGNORECASE(255)") 
+    private String email;
+    private String userId;
+    private String userHref;
+    private String registrationHref;
+    private Timestamp createdDTM;
+
+    protected IdXUser() {
+    	
+    }
+
+    public IdXUser(String email, String userId, String userHref, String registrationHref) {
+    	this.email = email;
+    	this.userId = userId;
+    	this.userHref = userHref;
+    	this.registrationHref = registrationHref;
+    	this.createdDTM = new Timestamp(System.currentTimeMillis());
+    }
+
+	public String getEmail() {
+		return email;
+	}
+
+	public void setEmail(String email) {
+		this.email = email;
+	}
+
+	public String getUserId() {
+		return userId;
+	}
+
+	public void setUserId(String userId) {
+		this.userId = userId;
+	}
+
+	public String getUserHref() {
+		return userHref;
+	}
+
+	public void setUserHref(String userHref) {
+		this.userHref = userHref;
+	}
+
+	public String getRegistrationHref() {
+		return registrationHref;
+	}
+
+	public void setRegistrationHref(String registrationHref) {
+		this.registrationHref = registrationHref;
+	}
+
+	public Timestamp getCreatedDTM() {
+		return createdDTM;
+	}
+
+	public void setCreatedDTM(Timestamp createdDTM) {
+		this.createdDTM = createdDTM;
+	}
+}
@@ -0,0 +1,32 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.daon.identityx.entity;
+
+/***
+ * The algorithm used to hash the password of an account.  The account's iterations hold
+ * the cost for the algorithm.
+ * 
+ * @author Daon
+ *
+ */
+public enum PasswordHashAlgorithm {
+
+	/** SHA-256 of the salt and password, hashed again for the number of iterations */
+	SHA256_ITERATED,
+	/** PBKDF2 with HMAC-SHA256 producing a 256 bit key */
+	PBKDF2_SHA256
+}
@@ -0,0 +1,39 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.daon.identityx.exception;
+
+import com.daon.identityx.controller.model.Error;
+
+/***
+ * Thrown when the server has no capacity left to process the request.  The REST layer
+ * returns it with a HTTP response code of SERVICE_UNAVAILABLE so that the caller retries later.
+ * 
+ * @author Daon
+ *
+ */
+public class ServerBusyException extends ProcessingException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 4127790362845019337L;
+
+	public ServerBusyException(Error error) {
+		super(error);
+	}
+
+}
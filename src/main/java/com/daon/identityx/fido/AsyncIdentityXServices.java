@@ -0,0 +1,201 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.controller.model.AuthenticatorInfo;
+import com.daon.identityx.controller.model.Error;
+import com.daon.identityx.controller.model.PolicyInfo;
+import com.daon.identityx.exception.ServerBusyException;
+import com.daon.identityx.rest.model.pojo.AuthenticationRequest;
+import com.daon.identityx.rest.model.pojo.FIDOFacets;
+import com.daon.identityx.rest.model.pojo.RegistrationChallenge;
+
+/***
+ * Performs the IdentityX operations on a dedicated pool of I/O threads so that the request
+ * threads are free while IdentityX is responding.
+ *
+ * Each operation is delegated to the IIdentityXServices on an I/O thread.  The pool and its
+ * queue are bounded - once both are full the returned future fails with a ServerBusyException
+ * rather than the work waiting without limit.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class AsyncIdentityXServices implements IAsyncIdentityXServices {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncIdentityXServices.class);
+
+	@Autowired
+	private IIdentityXServices identityXServices;
+	@Autowired
+	private CounterService counterService;
+	@Autowired
+	private GaugeService gaugeService;
+
+	@Value("${fido.identityx.async.threads:32}")
+	private int threads;
+	@Value("${fido.identityx.async.queue_depth:256}")
+	private int queueDepth;
+
+	private ThreadPoolExecutor executor;
+
+	public AsyncIdentityXServices() {
+	}
+
+	@PostConstruct
+	public void start() {
+
+		final AtomicInteger threadNumber = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueDepth),
+				runnable -> {
+					Thread thread = new Thread(runnable, "identityx-io-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.AbortPolicy());
+		logger.info("Started the IdentityX I/O pool - threads: {}, queue depth: {}", threads, queueDepth);
+	}
+
+	@PreDestroy
+	public void stop() {
+		executor.shutdownNow();
+	}
+
+	@Override
+	public CompletableFuture<PolicyInfo> getRegistrationPolicyInfo() {
+		return this.supply(() -> identityXServices.getRegistrationPolicyInfo());
+	}
+
+	@Override
+	public CompletableFuture<PolicyInfo> getAuthenticationPolicyInfo() {
+		return this.supply(() -> identityXServices.getAuthenticationPolicyInfo());
+	}
+
+	@Override
+	public CompletableFuture<PolicyInfo> getPolicyInfo(String policyHref) {
+		return this.supply(() -> identityXServices.getPolicyInfo(policyHref));
+	}
+
+	@Override
+	public CompletableFuture<FIDORegChallengeAndId> createRegRequest(String email, String idxId) {
+		return this.supply(() -> identityXServices.createRegRequest(email, idxId));
+	}
+
+	@Override
+	public CompletableFuture<RegistrationChallenge> processRegistrationResponse(String idxId, String registrationChallengeHref,
+			String fidoRegChallengeResponse) {
+		return this.supply(() -> identityXServices.processRegistrationResponse(idxId, registrationChallengeHref, fidoRegChallengeResponse));
+	}
+
+	@Override
+	public CompletableFuture<Void> deleteUser(String idxId) {
+		return this.supply(() -> {
+			identityXServices.deleteUser(idxId);
+			return null;
+		});
+	}
+
+	@Override
+	public CompletableFuture<AuthenticationRequest> createAuthRequest() {
+		return this.supply(() -> identityXServices.createAuthRequest());
+	}
+
+	@Override
+	public CompletableFuture<AuthenticationRequest> validateAuthResponse(String authenticationRequestHref, String authResponse) {
+		return this.supply(() -> identityXServices.validateAuthResponse(authenticationRequestHref, authResponse));
+	}
+
+	@Override
+	public CompletableFuture<FIDOFacets> getFidoFacets() {
+		return this.supply(() -> identityXServices.getFidoFacets());
+	}
+
+	@Override
+	public CompletableFuture<AuthenticatorInfo[]> listAuthenticators(String idxId) {
+		return this.supply(() -> identityXServices.listAuthenticators(idxId));
+	}
+
+	@Override
+	public CompletableFuture<AuthenticatorInfo> getAuthenticator(String idxId, String id) {
+		return this.supply(() -> identityXServices.getAuthenticator(idxId, id));
+	}
+
+	@Override
+	public CompletableFuture<String> deleteAuthenticator(String idxId, String authenticatorId) {
+		return this.supply(() -> identityXServices.deleteAuthenticator(idxId, authenticatorId));
+	}
+
+	@Override
+	public CompletableFuture<AuthenticationRequest> createAuthTransactionRequest(String idxId, String transactionContentType,
+			String transactionContent, boolean stepUpAuth) {
+		return this.supply(() -> identityXServices.createAuthTransactionRequest(idxId, transactionContentType, transactionContent, stepUpAuth));
+	}
+
+	@Override
+	public CompletableFuture<DeactivationResult> deactivateAndDelete(String idxId) {
+		return this.supply(() -> identityXServices.deactivateAndDelete(idxId));
+	}
+
+	/***
+	 * Run the operation on the I/O pool
+	 *
+	 * @param operation
+	 * @return a future completed by the operation, or failed with a ServerBusyException if the pool is saturated
+	 */
+	protected <T> CompletableFuture<T> supply(Supplier<T> operation) {
+
+		try {
+			CompletableFuture<T> result = CompletableFuture.supplyAsync(operation, executor);
+			gaugeService.submit("identityx.async.queue_depth", executor.getQueue().size());
+			return result;
+		} catch (RejectedExecutionException ex) {
+			counterService.increment("identityx.async.rejected");
+			logger.error("The IdentityX I/O pool is saturated - rejecting the request");
+			CompletableFuture<T> rejected = new CompletableFuture<>();
+			rejected.completeExceptionally(new ServerBusyException(Error.SERVER_BUSY));
+			return rejected;
+		}
+	}
+
+	public IIdentityXServices getIdentityXServices() {
+		return identityXServices;
+	}
+
+	public void setIdentityXServices(IIdentityXServices identityXServices) {
+		this.identityXServices = identityXServices;
+	}
+}
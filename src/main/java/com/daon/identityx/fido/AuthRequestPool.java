@@ -0,0 +1,213 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.rest.model.pojo.AuthenticationRequest;
+
+/***
+ * Keeps a number of authentication requests which have already been created in IdentityX so
+ * that a login does not have to wait for one to be created.
+ *
+ * The authentication requests for a login are not bound to a user so any of them can be
+ * handed out.  A background thread keeps the pool filled and a request is discarded the
+ * expiry margin before IdentityX would expire it.  If the pool is empty the caller creates
+ * the request itself.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class AuthRequestPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(AuthRequestPool.class);
+
+	@Autowired
+	private CounterService counterService;
+	@Autowired
+	private GaugeService gaugeService;
+
+	@Value("${fido.auth_request.pool.enabled:false}")
+	private boolean enabled;
+	@Value("${fido.auth_request.pool.size:20}")
+	private int size;
+	@Value("${fido.auth_request.pool.refill_interval:1000}")
+	private long refillInterval;
+	@Value("${fido.auth_request.pool.max_age:60000}")
+	private long maxAge;
+	@Value("${fido.auth_request.pool.expiry_margin:10000}")
+	private long expiryMargin;
+
+	private final ConcurrentLinkedQueue<PooledRequest> requests = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pooled = new AtomicInteger();
+	private final AtomicBoolean refillPending = new AtomicBoolean();
+	private Callable<AuthenticationRequest> creator;
+	private volatile ScheduledExecutorService refiller;
+
+	public AuthRequestPool() {
+	}
+
+	/***
+	 * Start filling the pool with requests made by the creator
+	 *
+	 * @param creator
+	 */
+	public synchronized void start(Callable<AuthenticationRequest> creator) {
+
+		if (!enabled || refiller != null) {
+			return;
+		}
+		this.creator = creator;
+		refiller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "auth-request-pool");
+			thread.setDaemon(true);
+			return thread;
+		});
+		refiller.scheduleWithFixedDelay(this::refill, 0, refillInterval, TimeUnit.MILLISECONDS);
+		logger.info("Started the authentication request pool - size: {}, refill interval: {}ms", size, refillInterval);
+	}
+
+	@PreDestroy
+	public void stop() {
+
+		if (refiller != null) {
+			refiller.shutdownNow();
+		}
+	}
+
+	/***
+	 * Take an authentication request from the pool
+	 *
+	 * @return the request or null if the pool is empty or disabled
+	 */
+	public AuthenticationRequest take() {
+
+		if (refiller == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		PooledRequest pooledRequest;
+		while ((pooledRequest = requests.poll()) != null) {
+			pooled.decrementAndGet();
+			if (pooledRequest.getUsableUntil() > now) {
+				counterService.increment("auth_request.pool.hit");
+				this.requestRefill();
+				return pooledRequest.getRequest();
+			}
+			counterService.increment("auth_request.pool.expired");
+		}
+		counterService.increment("auth_request.pool.miss");
+		this.requestRefill();
+		return null;
+	}
+
+	/***
+	 * Refill the pool straight away unless a refill is already waiting to run
+	 */
+	protected void requestRefill() {
+
+		if (refillPending.compareAndSet(false, true)) {
+			refiller.execute(this::refill);
+		}
+	}
+
+	/***
+	 * Discard the requests which are about to expire and create requests until the pool is full
+	 */
+	protected void refill() {
+
+		refillPending.set(false);
+		try {
+			long now = System.currentTimeMillis();
+			// The request is removed by identity so a request taken at the same time is only counted once
+			for (Iterator<PooledRequest> iterator = requests.iterator(); iterator.hasNext();) {
+				PooledRequest pooledRequest = iterator.next();
+				if (pooledRequest.getUsableUntil() <= now && requests.remove(pooledRequest)) {
+					pooled.decrementAndGet();
+					counterService.increment("auth_request.pool.expired");
+				}
+			}
+			while (pooled.get() < size) {
+				AuthenticationRequest request = creator.call();
+				requests.add(new PooledRequest(request, this.getUsableUntil(request)));
+				pooled.incrementAndGet();
+			}
+		} catch (Exception ex) {
+			counterService.increment("auth_request.pool.refill_failed");
+			logger.error("An exception occurred while attempting to refill the authentication request pool.  Exception: " + ex.getMessage(), ex);
+		} finally {
+			gaugeService.submit("auth_request.pool.size", pooled.get());
+		}
+	}
+
+	/***
+	 * The time until which the request can be handed out - the expiry margin before IdentityX
+	 * expires it, or the maximum age if IdentityX did not give an expiry
+	 *
+	 * @param request
+	 * @return
+	 */
+	protected long getUsableUntil(AuthenticationRequest request) {
+
+		long now = System.currentTimeMillis();
+		if (request.getExpiration() != null) {
+			return Math.min(now + maxAge, request.getExpiration().getTime() - expiryMargin);
+		}
+		return now + maxAge;
+	}
+
+	/***
+	 * A created authentication request and the time until which it can be handed out
+	 */
+	protected static class PooledRequest {
+
+		private final AuthenticationRequest request;
+		private final long usableUntil;
+
+		PooledRequest(AuthenticationRequest request, long usableUntil) {
+			this.request = request;
+			this.usableUntil = usableUntil;
+		}
+
+		AuthenticationRequest getRequest() {
+			return request;
+		}
+
+		long getUsableUntil() {
+			return usableUntil;
+		}
+	}
+}
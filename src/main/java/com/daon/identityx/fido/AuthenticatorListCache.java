@@ -0,0 +1,168 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.cache.BoundedCache;
+import com.daon.identityx.cache.BoundedCache.Loader;
+import com.daon.identityx.controller.model.AuthenticatorInfo;
+
+/***
+ * Holds the list of authenticators of each IdentityX user for a short time, as the app asks for
+ * the list each time its authenticators screen is shown.
+ *
+ * The list of a user is invalidated whenever an authenticator is added or removed, or the user
+ * is deleted, through this server.  Changes made elsewhere are seen once the TTL has passed.
+ *
+ * An authenticator in a user's list belongs to that user, so a request for one of the user's
+ * authenticators can be checked against the list.  A listed authenticator lacks its
+ * deregistration request, so the first request for it still gets it from IdentityX - the full
+ * authenticator is then held alongside the list.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class AuthenticatorListCache implements PublicMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(AuthenticatorListCache.class);
+
+	@Value("${fido.authenticator_list.cache.max_size:10000}")
+	private int maxSize;
+	@Value("${fido.authenticator_list.cache.ttl:30000}")
+	private long ttl;
+
+	private BoundedCache<String, UserAuthenticators> cache;
+
+	public AuthenticatorListCache() {
+	}
+
+	@PostConstruct
+	public void initialise() {
+
+		cache = new BoundedCache<>("authenticator_list.cache", maxSize, ttl);
+		logger.info("Created the authenticator list cache - max size: {}, TTL: {}ms", maxSize, ttl);
+	}
+
+	/***
+	 * Get the authenticators of the IdentityX user, loading them if they are not held
+	 *
+	 * @param idxId
+	 * @param loader
+	 * @return
+	 * @throws E
+	 */
+	public <E extends Exception> AuthenticatorInfo[] list(String idxId, Loader<String, AuthenticatorInfo[], E> loader) throws E {
+
+		UserAuthenticators userAuthenticators = cache.get(idxId, id -> new UserAuthenticators(loader.load(id)));
+		return userAuthenticators.getAuthenticators();
+	}
+
+	/***
+	 * Get the full authenticator of the IdentityX user if it is held
+	 *
+	 * @param idxId
+	 * @param authenticatorId
+	 * @return the authenticator or null if it is not held or is not complete
+	 */
+	public AuthenticatorInfo getAuthenticator(String idxId, String authenticatorId) {
+
+		UserAuthenticators userAuthenticators = cache.getIfPresent(idxId);
+		if (userAuthenticators == null) {
+			return null;
+		}
+		return userAuthenticators.getFullAuthenticator(authenticatorId);
+	}
+
+	/***
+	 * Hold the full authenticator alongside the list of the user, if the list is held
+	 *
+	 * @param idxId
+	 * @param authenticator
+	 */
+	public void putAuthenticator(String idxId, AuthenticatorInfo authenticator) {
+
+		UserAuthenticators userAuthenticators = cache.getIfPresent(idxId);
+		if (userAuthenticators != null && userAuthenticators.contains(authenticator.getId())) {
+			userAuthenticators.putFullAuthenticator(authenticator);
+		}
+	}
+
+	/***
+	 * Forget the authenticators of the user after they have changed
+	 *
+	 * @param idxId
+	 */
+	public void invalidate(String idxId) {
+
+		if (idxId != null) {
+			cache.invalidate(idxId);
+		}
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		return cache.metrics();
+	}
+
+	/***
+	 * The list of authenticators of a user and those of them which have been got in full
+	 */
+	protected static class UserAuthenticators {
+
+		private final AuthenticatorInfo[] authenticators;
+		private final ConcurrentHashMap<String, AuthenticatorInfo> fullAuthenticators = new ConcurrentHashMap<>();
+
+		UserAuthenticators(AuthenticatorInfo[] authenticators) {
+			this.authenticators = authenticators;
+		}
+
+		AuthenticatorInfo[] getAuthenticators() {
+			return authenticators;
+		}
+
+		boolean contains(String authenticatorId) {
+
+			for (AuthenticatorInfo authenticator : authenticators) {
+				if (authenticator.getId().equals(authenticatorId)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		AuthenticatorInfo getFullAuthenticator(String authenticatorId) {
+			return fullAuthenticators.get(authenticatorId);
+		}
+
+		void putFullAuthenticator(AuthenticatorInfo authenticator) {
+			fullAuthenticators.put(authenticator.getId(), authenticator);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import java.util.Collection;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.cache.BoundedCache;
+import com.daon.identityx.cache.BoundedCache.Loader;
+import com.daon.identityx.rest.model.pojo.AuthenticatorType;
+
+/***
+ * Holds the authenticator types by their href.  Listing a user's authenticators needs the type
+ * of each authenticator, and there are only a few types within a tenant.
+ *
+ * Types expire after the TTL so that changes to their metadata are picked up.  The types with
+ * the IDs listed in the warm up property are loaded when the IdentityX connection is made so
+ * the first requests do not need to load them.  The cache counters are published as metrics.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class AuthenticatorTypeCache implements PublicMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(AuthenticatorTypeCache.class);
+
+	@Value("${fido.authenticator_type.cache.max_size:1000}")
+	private int maxSize;
+	@Value("${fido.authenticator_type.cache.ttl:3600000}")
+	private long ttl;
+	@Value("${fido.authenticator_type.cache.warm_up_ids:}")
+	private String[] warmUpIds;
+
+	private BoundedCache<String, AuthenticatorType> cache;
+
+	public AuthenticatorTypeCache() {
+	}
+
+	@PostConstruct
+	public void initialise() {
+
+		cache = new BoundedCache<>("authenticator_type.cache", maxSize, ttl);
+		logger.info("Created the authenticator type cache - max size: {}, TTL: {}ms", maxSize, ttl);
+	}
+
+	/***
+	 * Get the authenticator type with the href, loading it if it is not held
+	 *
+	 * @param href
+	 * @param loader
+	 * @return
+	 * @throws E
+	 */
+	public <E extends Exception> AuthenticatorType get(String href, Loader<String, AuthenticatorType, E> loader) throws E {
+		return cache.get(href, loader);
+	}
+
+	/***
+	 * Hold the authenticator type, replacing any held with the same href
+	 *
+	 * @param type
+	 */
+	public void put(AuthenticatorType type) {
+		cache.put(type.getHref(), type);
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	public String[] getWarmUpIds() {
+		return warmUpIds;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		return cache.metrics();
+	}
+}
@@ -0,0 +1,56 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import com.daon.identityx.controller.model.AuthenticatorInfo;
+
+/***
+ * Class used to hold the outcome of deactivating the FIDO authenticators of a user and deleting
+ * the user.  The deregistration requests are for every authenticator which has been archived,
+ * even when the user could not be deleted because some authenticators could not be archived.
+ * The client must be sent those requests in either case; if the user was not deleted the
+ * delete can be retried.
+ *  
+ * @author Daon
+ *
+ */
+public class DeactivationResult {
+
+	private AuthenticatorInfo[] fidoDeregistrationRequests;
+	private boolean userDeleted;
+	
+	public DeactivationResult() {
+	}
+
+	public AuthenticatorInfo[] getFidoDeregistrationRequests() {
+		return fidoDeregistrationRequests;
+	}
+
+	public void setFidoDeregistrationRequests(AuthenticatorInfo[] fidoDeregistrationRequests) {
+		this.fidoDeregistrationRequests = fidoDeregistrationRequests;
+	}
+
+	public boolean isUserDeleted() {
+		return userDeleted;
+	}
+
+	public void setUserDeleted(boolean userDeleted) {
+		this.userDeleted = userDeleted;
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/***
+ * The outcome of the calls made by the IdentityXFanOutExecutor.  The results are in the order of
+ * the calls with a null in place of each call which failed or timed out, so a caller can act on
+ * the calls which succeeded even when others did not.
+ *
+ * @author Daon
+ *
+ */
+public class FanOutResult<T> {
+
+	private final String description;
+	private final List<T> results;
+	private final List<String> failures;
+
+	public FanOutResult(String description, List<T> results, List<String> failures) {
+		this.description = description;
+		this.results = Collections.unmodifiableList(results);
+		this.failures = Collections.unmodifiableList(failures);
+	}
+
+	/***
+	 * @return the result of each call in the order of the calls, null where the call did not succeed
+	 */
+	public List<T> getResults() {
+		return results;
+	}
+
+	/***
+	 * @return the results of the calls which succeeded
+	 */
+	public List<T> getSuccesses() {
+
+		List<T> successes = new ArrayList<>(results.size());
+		for (T result : results) {
+			if (result != null) {
+				successes.add(result);
+			}
+		}
+		return successes;
+	}
+
+	public List<String> getFailures() {
+		return failures;
+	}
+
+	public boolean hasFailures() {
+		return !failures.isEmpty();
+	}
+
+	/***
+	 * @return a message listing each call which did not succeed, or null if they all succeeded
+	 */
+	public String getError() {
+
+		if (failures.isEmpty()) {
+			return null;
+		}
+		return failures.size() + " of " + results.size() + " calls to " + description + " did not succeed - " + String.join("; ", failures);
+	}
+
+}
@@ -0,0 +1,234 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.rest.model.pojo.FIDOFacets;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/***
+ * Holds the FIDO facets of the application so that a request for the facets does not need
+ * a search of the IdentityX applications.
+ *
+ * The facets are loaded by a background thread every refresh interval and rendered to JSON
+ * once per load, along with an ETag for the rendered JSON.  If the facets held are older than
+ * the TTL, because the background refresh has failed or is disabled, the next request loads
+ * them itself.  Should that load fail the old facets are returned rather than an error.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class FidoFacetsCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(FidoFacetsCache.class);
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final int ETAG_BYTES = 16;
+
+	@Autowired
+	private IIdentityXServices identityXServices;
+	@Autowired
+	private ObjectMapper objectMapper;
+	@Autowired
+	private CounterService counterService;
+
+	@Value("${fido.facets.cache.ttl:300000}")
+	private long ttl;
+	@Value("${fido.facets.cache.refresh_interval:60000}")
+	private long refreshInterval;
+
+	private volatile CachedFacets cachedFacets;
+	private ScheduledExecutorService refresher;
+
+	public FidoFacetsCache() {
+	}
+
+	@PostConstruct
+	public void start() {
+
+		if (refreshInterval <= 0) {
+			logger.info("The background refresh of the facets is disabled - facets will be loaded when older than {}ms", ttl);
+			return;
+		}
+		refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "facets-refresher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		refresher.scheduleWithFixedDelay(this::refresh, 0, refreshInterval, TimeUnit.MILLISECONDS);
+		logger.info("Started the facets refresher - interval: {}ms, TTL: {}ms", refreshInterval, ttl);
+	}
+
+	@PreDestroy
+	public void stop() {
+
+		if (refresher != null) {
+			refresher.shutdownNow();
+		}
+	}
+
+	/***
+	 * Get the facets along with their JSON and ETag, loading them if they are missing or too old
+	 *
+	 * @return
+	 */
+	public CachedFacets get() {
+
+		CachedFacets current = cachedFacets;
+		if (current != null && System.currentTimeMillis() - current.getLoadedAt() < ttl) {
+			return current;
+		}
+		synchronized (this) {
+			current = cachedFacets;
+			if (current != null && System.currentTimeMillis() - current.getLoadedAt() < ttl) {
+				return current;
+			}
+			counterService.increment("facets.cache.miss");
+			try {
+				return this.load();
+			} catch (RuntimeException ex) {
+				if (current == null) {
+					throw ex;
+				}
+				logger.warn("The facets could not be loaded - returning the facets loaded at: {}", current.getLoadedAt());
+				return current;
+			}
+		}
+	}
+
+	/***
+	 * Load the facets in the background so that requests do not wait for them
+	 */
+	protected void refresh() {
+
+		try {
+			synchronized (this) {
+				this.load();
+			}
+		} catch (Exception ex) {
+			counterService.increment("facets.cache.refresh_failed");
+			logger.error("An exception occurred while attempting to refresh the facets.  Exception: " + ex.getMessage(), ex);
+		}
+	}
+
+	/***
+	 * Load the facets from IdentityX and render them
+	 *
+	 * @return
+	 */
+	protected CachedFacets load() {
+
+		FIDOFacets facets = identityXServices.getFidoFacets();
+		byte[] json;
+		try {
+			json = objectMapper.writeValueAsBytes(facets);
+		} catch (JsonProcessingException e) {
+			String error = "An exception occurred while attempting to convert the FIDO facets to JSON";
+			logger.error(error, e);
+			throw new RuntimeException(error, e);
+		}
+		CachedFacets loaded = new CachedFacets(facets, json, this.createETag(json), System.currentTimeMillis());
+		CachedFacets previous = cachedFacets;
+		cachedFacets = loaded;
+		if (previous == null || !previous.getETag().equals(loaded.getETag())) {
+			logger.info("Loaded the facets - ETag: {}", loaded.getETag());
+		}
+		return loaded;
+	}
+
+	/***
+	 * Create a strong ETag from the start of the SHA-256 hash of the JSON
+	 *
+	 * @param json
+	 * @return
+	 */
+	protected String createETag(byte[] json) {
+
+		byte[] hash;
+		try {
+			hash = MessageDigest.getInstance("SHA-256").digest(json);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		StringBuilder eTag = new StringBuilder(ETAG_BYTES * 2 + 2).append('"');
+		for (int i = 0; i < ETAG_BYTES; i++) {
+			eTag.append(HEX[(hash[i] >>> 4) & 0x0f]).append(HEX[hash[i] & 0x0f]);
+		}
+		return eTag.append('"').toString();
+	}
+
+	/***
+	 * The number of seconds a client may use the facets before asking for them again
+	 *
+	 * @return
+	 */
+	public long getMaxAgeSeconds() {
+		return TimeUnit.MILLISECONDS.toSeconds(Math.max(0, ttl));
+	}
+
+	/***
+	 * The facets as loaded, their JSON and the ETag of the JSON
+	 */
+	public static class CachedFacets {
+
+		private final FIDOFacets facets;
+		private final byte[] json;
+		private final String eTag;
+		private final long loadedAt;
+
+		CachedFacets(FIDOFacets facets, byte[] json, String eTag, long loadedAt) {
+			this.facets = facets;
+			this.json = json;
+			this.eTag = eTag;
+			this.loadedAt = loadedAt;
+		}
+
+		public FIDOFacets getFacets() {
+			return facets;
+		}
+
+		public byte[] getJson() {
+			return json;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		public long getLoadedAt() {
+			return loadedAt;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.controller.model.AuthenticatorInfo;
+import com.daon.identityx.controller.model.PolicyInfo;
+import com.daon.identityx.rest.model.pojo.AuthenticationRequest;
+import com.daon.identityx.rest.model.pojo.FIDOFacets;
+import com.daon.identityx.rest.model.pojo.RegistrationChallenge;
+
+/***
+ * The IIdentityXServices used by the rest of the server.  Every operation which calls IdentityX
+ * is passed to the IdentityXServices through the IdentityXCircuitBreaker so that a slow or
+ * failing IdentityX server is failed fast rather than waited on.
+ *
+ * @author Daon
+ *
+ */
+@Service
+@Primary
+public class GuardedIdentityXServices implements IIdentityXServices {
+
+	@Autowired
+	@Qualifier("identityXServices")
+	private IIdentityXServices identityXServices;
+	@Autowired
+	private IdentityXCircuitBreaker circuitBreaker;
+
+	public GuardedIdentityXServices() {
+	}
+
+	@Override
+	public PolicyInfo getRegistrationPolicyInfo() {
+		return circuitBreaker.call("getPolicy", () -> identityXServices.getRegistrationPolicyInfo());
+	}
+
+	@Override
+	public PolicyInfo getAuthenticationPolicyInfo() {
+		return circuitBreaker.call("getPolicy", () -> identityXServices.getAuthenticationPolicyInfo());
+	}
+
+	@Override
+	public PolicyInfo getPolicyInfo(String policyHref) {
+		return circuitBreaker.call("getPolicy", () -> identityXServices.getPolicyInfo(policyHref));
+	}
+
+	@Override
+	public String getRegPolicyHref() {
+		return identityXServices.getRegPolicyHref();
+	}
+
+	@Override
+	public String getAuthPolicyHref() {
+		return identityXServices.getAuthPolicyHref();
+	}
+
+	@Override
+	public FIDORegChallengeAndId createRegRequest(String email, String idxId) {
+		return circuitBreaker.call("createRegRequest", () -> identityXServices.createRegRequest(email, idxId));
+	}
+
+	@Override
+	public RegistrationChallenge processRegistrationResponse(String idxId, String registrationChallengeHref, String fidoRegChallengeResponse) {
+		return circuitBreaker.call("processRegistrationResponse",
+				() -> identityXServices.processRegistrationResponse(idxId, registrationChallengeHref, fidoRegChallengeResponse));
+	}
+
+	@Override
+	public void deleteUser(String idxId) {
+		circuitBreaker.call("deleteUser", () -> {
+			identityXServices.deleteUser(idxId);
+			return null;
+		});
+	}
+
+	@Override
+	public AuthenticationRequest createAuthRequest() {
+		return circuitBreaker.call("createAuthRequest", () -> identityXServices.createAuthRequest());
+	}
+
+	@Override
+	public AuthenticationRequest validateAuthResponse(String authenticationRequestHref, String authResponse) {
+		return circuitBreaker.call("validateAuthResponse", () -> identityXServices.validateAuthResponse(authenticationRequestHref, authResponse));
+	}
+
+	@Override
+	public FIDOFacets getFidoFacets() {
+		return circuitBreaker.call("getFidoFacets", () -> identityXServices.getFidoFacets());
+	}
+
+	@Override
+	public AuthenticatorInfo[] listAuthenticators(String idxId) {
+		return circuitBreaker.call("listAuthenticators", () -> identityXServices.listAuthenticators(idxId));
+	}
+
+	@Override
+	public AuthenticatorInfo getAuthenticator(String idxId, String id) {
+		return circuitBreaker.call("getAuthenticator", () -> identityXServices.getAuthenticator(idxId, id));
+	}
+
+	@Override
+	public String deleteAuthenticator(String idxId, String authenticatorId) {
+		return circuitBreaker.call("deleteAuthenticator", () -> identityXServices.deleteAuthenticator(idxId, authenticatorId));
+	}
+
+	@Override
+	public AuthenticationRequest createAuthTransactionRequest(String idxId, String transactionContentType, String transactionContent,
+			boolean stepUpAuth) {
+		return circuitBreaker.call("createAuthTransactionRequest",
+				() -> identityXServices.createAuthTransactionRequest(idxId, transactionContentType, transactionContent, stepUpAuth));
+	}
+
+	@Override
+	public DeactivationResult deactivateAndDelete(String idxId) {
+		return circuitBreaker.call("deactivateAndDelete", () -> identityXServices.deactivateAndDelete(idxId));
+	}
+
+	@Override
+	public String getUserEmail(String idxId) {
+		return circuitBreaker.call("getUser", () -> identityXServices.getUserEmail(idxId));
+	}
+
+	public IIdentityXServices getIdentityXServices() {
+		return identityXServices;
+	}
+
+	public void setIdentityXServices(IIdentityXServices identityXServices) {
+		this.identityXServices = identityXServices;
+	}
+
+	public IdentityXCircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	public void setCircuitBreaker(IdentityXCircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+}
@@ -42,6 +42,25 @@ public interface IIdentityXServices {
 	 */
 	public PolicyInfo getAuthenticationPolicyInfo();
 
+	/**
+	 * Retrieves the information of the policy with the specified href.
+	 * @param policyHref
+	 * @return
+	 */
+	public PolicyInfo getPolicyInfo(String policyHref);
+
+	/**
+	 * The href of the registration policy.
+	 * @return
+	 */
+	public String getRegPolicyHref();
+
+	/**
+	 * The href of the authentication policy.
+	 * @return
+	 */
+	public String getAuthPolicyHref();
+
 	/***
 	 * Create the FIDO registration request for the user
 	 * 
@@ -140,9 +159,19 @@ public interface IIdentityXServices {
 	/***
 	 * Deactivates all the FIDO authenticators associated with the user and then
 	 * deletes/deactivates the user whose id is supplied.  
+	 * If any authenticator cannot be archived the user is not deleted, but the deregistration
+	 * requests for the authenticators which were archived are still returned.
 	 * 
 	 * @param idxId
 	 * @return
 	 */
-	public AuthenticatorInfo[] deactivateAndDelete(String idxId);
+	public DeactivationResult deactivateAndDelete(String idxId);
+
+	/***
+	 * Gets the email address, the IdentityX UserId, of the user whose id is supplied.
+	 * 
+	 * @param idxId
+	 * @return the email address or null if there is no such user
+	 */
+	public String getUserEmail(String idxId);
 }
@@ -0,0 +1,401 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.controller.model.Error;
+import com.daon.identityx.exception.ProcessingException;
+import com.daon.identityx.exception.ServerBusyException;
+import com.identityx.clientSDK.exceptions.IdxRestException;
+
+/***
+ * Stops a slow or failing IdentityX server from tying up the request threads.
+ *
+ * Each operation has a bulkhead - a limit on the number of its calls in progress.  While the
+ * average latency of an operation is above the shed latency only half of its calls are let
+ * through.  A call beyond the limit fails straight away.
+ *
+ * Each operation also has its own circuit which records the outcome of its latest calls.  A
+ * call which failed because IdentityX could not be reached, timed out or returned a server
+ * error, or which took longer than the slow call time, counts as a failure.  Once the failure
+ * rate reaches the threshold the circuit opens and every call of the operation fails straight
+ * away.  After the open duration the circuit is half open and a few probe calls are let
+ * through - if they all succeed the circuit closes, if any fails it opens again.  As the
+ * circuits are separate, requests with bad input for one operation (e.g. unknown authenticator
+ * IDs) cannot stop the calls of the others.
+ *
+ * A call which is not let through fails with a ServerBusyException.  The state of the circuits
+ * and the transitions are published as metrics.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class IdentityXCircuitBreaker implements PublicMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(IdentityXCircuitBreaker.class);
+
+	private static final String[] STATUS_PROPERTIES = { "httpStatus", "httpStatusCode", "statusCode", "status" };
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	@Autowired
+	private CounterService counterService;
+
+	@Value("${fido.identityx.circuit.enabled:true}")
+	private boolean enabled;
+	@Value("${fido.identityx.circuit.max_concurrent:16}")
+	private int maxConcurrent;
+	@Value("${fido.identityx.circuit.shed_latency:2000}")
+	private long shedLatency;
+	@Value("${fido.identityx.circuit.slow_call:5000}")
+	private long slowCall;
+	@Value("${fido.identityx.circuit.window_size:20}")
+	private int windowSize;
+	@Value("${fido.identityx.circuit.minimum_calls:10}")
+	private int minimumCalls;
+	@Value("${fido.identityx.circuit.failure_rate:50}")
+	private int failureRate;
+	@Value("${fido.identityx.circuit.open_duration:30000}")
+	private long openDuration;
+	@Value("${fido.identityx.circuit.half_open_probes:3}")
+	private int halfOpenProbes;
+
+	private final ConcurrentHashMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+	private final AtomicLong opened = new AtomicLong();
+	private final AtomicLong halfOpened = new AtomicLong();
+	private final AtomicLong closed = new AtomicLong();
+
+	public IdentityXCircuitBreaker() {
+	}
+
+	/***
+	 * Make the IdentityX call if the bulkhead and the circuit of the operation let it through
+	 *
+	 * @param operation
+	 * @param call
+	 * @return
+	 * @throws ServerBusyException if the call is not let through
+	 */
+	public <T> T call(String operation, Supplier<T> call) {
+
+		if (!enabled) {
+			return call.get();
+		}
+		Bulkhead bulkhead = bulkheads.computeIfAbsent(operation, Bulkhead::new);
+		if (!bulkhead.tryAcquire()) {
+			counterService.increment("identityx." + operation + ".shed");
+			logger.warn("Too many IdentityX {} calls are in progress - rejecting the request", operation);
+			throw new ServerBusyException(Error.IDENTITYX_UNAVAILABLE);
+		}
+		try {
+			Circuit circuit = bulkhead.circuit;
+			boolean probe = circuit.tryAcquirePermission();
+			if (!probe && circuit.state != State.CLOSED) {
+				counterService.increment("identityx." + operation + ".rejected");
+				logger.debug("The IdentityX {} circuit is {} - rejecting the call", operation, circuit.state);
+				throw new ServerBusyException(Error.IDENTITYX_UNAVAILABLE);
+			}
+			long start = System.nanoTime();
+			boolean failed = true;
+			try {
+				T result = call.get();
+				failed = false;
+				return result;
+			} catch (RuntimeException ex) {
+				failed = this.isIdentityXFailure(ex);
+				throw ex;
+			} finally {
+				long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				bulkhead.recordLatency(duration);
+				if (duration >= slowCall) {
+					counterService.increment("identityx." + operation + ".slow");
+					failed = true;
+				}
+				circuit.recordOutcome(probe, failed);
+			}
+		} finally {
+			bulkhead.release();
+		}
+	}
+
+	/***
+	 * Whether the exception was caused by IdentityX being unavailable rather than by the request.
+	 * Only an I/O error, a timeout or an IdentityX error with a server error status counts - an
+	 * IdentityX error with a client error status (e.g. 404 for an unknown ID) is caused by the
+	 * request, as are the exceptions raised here and any bug in the calling code.
+	 *
+	 * @param ex
+	 * @return
+	 */
+	protected boolean isIdentityXFailure(RuntimeException ex) {
+
+		if (ex instanceof ProcessingException) {
+			return false;
+		}
+		for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+			if (cause instanceof IOException || cause instanceof TimeoutException) {
+				return true;
+			}
+			if (cause instanceof IdxRestException) {
+				int status = this.getHttpStatus((IdxRestException) cause);
+				// Without a status the error cannot be told apart from an outage so it counts
+				return status <= 0 || status >= 500;
+			}
+		}
+		return false;
+	}
+
+	/***
+	 * The HTTP status of the IdentityX error if the SDK exception exposes one
+	 *
+	 * @param ex
+	 * @return the status or 0 if it is not known
+	 */
+	protected int getHttpStatus(IdxRestException ex) {
+
+		BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(ex);
+		for (String property : STATUS_PROPERTIES) {
+			if (wrapper.isReadableProperty(property)) {
+				Object value = wrapper.getPropertyValue(property);
+				if (value instanceof Number) {
+					return ((Number) value).intValue();
+				}
+			}
+		}
+		return 0;
+	}
+
+	protected void transition(String operation, State oldState, State newState) {
+
+		logger.info("The IdentityX {} circuit has changed from {} to {}", operation, oldState, newState);
+		switch (newState) {
+		case OPEN:
+			opened.incrementAndGet();
+			counterService.increment("identityx.circuit.opened");
+			counterService.increment("identityx." + operation + ".circuit.opened");
+			break;
+		case HALF_OPEN:
+			halfOpened.incrementAndGet();
+			counterService.increment("identityx.circuit.half_opened");
+			break;
+		case CLOSED:
+		default:
+			closed.incrementAndGet();
+			counterService.increment("identityx.circuit.closed");
+			break;
+		}
+	}
+
+	/***
+	 * The state of the circuit of an operation
+	 *
+	 * @param operation
+	 * @return
+	 */
+	public State getState(String operation) {
+
+		Bulkhead bulkhead = bulkheads.get(operation);
+		return bulkhead == null ? State.CLOSED : bulkhead.circuit.state;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+
+		List<Metric<?>> metrics = new ArrayList<>();
+		int notClosed = 0;
+		metrics.add(new Metric<Long>("identityx.circuit.opened", opened.get()));
+		metrics.add(new Metric<Long>("identityx.circuit.half_opened", halfOpened.get()));
+		metrics.add(new Metric<Long>("identityx.circuit.closed", closed.get()));
+		for (Bulkhead bulkhead : bulkheads.values()) {
+			State state = bulkhead.circuit.state;
+			if (state != State.CLOSED) {
+				notClosed++;
+			}
+			metrics.add(new Metric<Integer>("identityx." + bulkhead.operation + ".in_flight", bulkhead.inFlight.get()));
+			metrics.add(new Metric<Long>("identityx." + bulkhead.operation + ".latency", bulkhead.averageLatency));
+			metrics.add(new Metric<Integer>("identityx." + bulkhead.operation + ".circuit.state", state.ordinal()));
+		}
+		metrics.add(new Metric<Integer>("identityx.circuit.not_closed", notClosed));
+		return metrics;
+	}
+
+	/***
+	 * The calls of an operation in progress and their average latency
+	 */
+	protected class Bulkhead {
+
+		private final String operation;
+		private final Circuit circuit;
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private volatile long averageLatency;
+
+		Bulkhead(String operation) {
+			this.operation = operation;
+			this.circuit = new Circuit(operation);
+		}
+
+		boolean tryAcquire() {
+
+			int limit = averageLatency > shedLatency ? Math.max(1, maxConcurrent / 2) : maxConcurrent;
+			if (inFlight.incrementAndGet() > limit) {
+				inFlight.decrementAndGet();
+				return false;
+			}
+			return true;
+		}
+
+		void release() {
+			inFlight.decrementAndGet();
+		}
+
+		void recordLatency(long latency) {
+			// An exponentially weighted average so that a change in latency is seen within a few calls
+			averageLatency = (averageLatency * 3 + latency) / 4;
+		}
+	}
+
+	/***
+	 * The outcome of the latest calls of an operation and the state of its circuit
+	 */
+	protected class Circuit {
+
+		private final String operation;
+		private final AtomicInteger probesStarted = new AtomicInteger();
+		private final AtomicInteger probesSucceeded = new AtomicInteger();
+		private volatile State state = State.CLOSED;
+		private volatile long openedAt;
+		private boolean[] outcomes;
+		private int outcomeCount;
+		private int outcomeIndex;
+		private int failureCount;
+
+		Circuit(String operation) {
+			this.operation = operation;
+		}
+
+		/***
+		 * Whether the call is a half open probe.  An open circuit whose open duration has passed
+		 * becomes half open here.
+		 *
+		 * @return
+		 */
+		boolean tryAcquirePermission() {
+
+			if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDuration) {
+				synchronized (this) {
+					if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDuration) {
+						probesStarted.set(0);
+						probesSucceeded.set(0);
+						this.transition(State.HALF_OPEN);
+					}
+				}
+			}
+			return state == State.HALF_OPEN && probesStarted.incrementAndGet() <= halfOpenProbes;
+		}
+
+		/***
+		 * Record the outcome of a call and open or close the circuit if needed
+		 *
+		 * @param probe
+		 * @param failed
+		 */
+		synchronized void recordOutcome(boolean probe, boolean failed) {
+
+			if (failed) {
+				counterService.increment("identityx." + operation + ".failed");
+			}
+			if (probe) {
+				if (state != State.HALF_OPEN) {
+					return;
+				}
+				if (failed) {
+					this.open();
+				} else if (probesSucceeded.incrementAndGet() >= halfOpenProbes) {
+					this.resetOutcomes();
+					this.transition(State.CLOSED);
+				}
+				return;
+			}
+			if (state != State.CLOSED) {
+				return;
+			}
+			if (outcomes == null) {
+				outcomes = new boolean[windowSize];
+			}
+			if (outcomeCount == windowSize && outcomes[outcomeIndex]) {
+				failureCount--;
+			}
+			outcomes[outcomeIndex] = failed;
+			outcomeIndex = (outcomeIndex + 1) % windowSize;
+			outcomeCount = Math.min(windowSize, outcomeCount + 1);
+			if (failed) {
+				failureCount++;
+			}
+			if (outcomeCount >= minimumCalls && failureCount * 100 >= failureRate * outcomeCount) {
+				logger.error("{} of the last {} IdentityX {} calls failed - opening the circuit for {}ms", failureCount, outcomeCount, operation, openDuration);
+				this.open();
+			}
+		}
+
+		void open() {
+
+			openedAt = System.currentTimeMillis();
+			this.resetOutcomes();
+			this.transition(State.OPEN);
+		}
+
+		void resetOutcomes() {
+
+			outcomes = null;
+			outcomeCount = 0;
+			outcomeIndex = 0;
+			failureCount = 0;
+		}
+
+		void transition(State newState) {
+
+			State oldState = state;
+			state = newState;
+			IdentityXCircuitBreaker.this.transition(operation, oldState, newState);
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.stereotype.Service;
+
+/***
+ * Makes a number of independent IdentityX calls at the same time so that an operation on
+ * several authenticators takes about as long as its slowest call rather than the sum of them.
+ *
+ * The calls run on a small, bounded pool.  Each call must finish within the call timeout of being
+ * submitted, including any time it waits for space in the queue or in the queue itself.  A call
+ * which cannot be queued before its timeout fails without being made.  Every call is waited for
+ * and the result of each call which succeeded is returned along with a failure for each call
+ * which did not, so that the caller can act on the calls already made.
+ * With fan out disabled the calls are made one after another on the calling thread.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class IdentityXFanOutExecutor {
+
+	private static final Logger logger = LoggerFactory.getLogger(IdentityXFanOutExecutor.class);
+
+	@Autowired
+	private CounterService counterService;
+	@Autowired
+	private GaugeService gaugeService;
+
+	@Value("${fido.identityx.fanout.enabled:true}")
+	private boolean enabled;
+	@Value("${fido.identityx.fanout.threads:8}")
+	private int threads;
+	@Value("${fido.identityx.fanout.queue_depth:64}")
+	private int queueDepth;
+	@Value("${fido.identityx.fanout.call_timeout:10000}")
+	private long callTimeout;
+
+	private ThreadPoolExecutor executor;
+
+	public IdentityXFanOutExecutor() {
+	}
+
+	@PostConstruct
+	public void start() {
+
+		if (!enabled) {
+			logger.info("IdentityX fan out is disabled - calls will be made one after another");
+			return;
+		}
+		final AtomicInteger threadNumber = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueDepth),
+				runnable -> {
+					Thread thread = new Thread(runnable, "identityx-fanout-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.AbortPolicy());
+		// A call which finds the pool full is put straight onto the queue, so the threads must exist
+		executor.prestartAllCoreThreads();
+		logger.info("Started the IdentityX fan out pool - threads: {}, queue depth: {}, call timeout: {}ms", threads, queueDepth, callTimeout);
+	}
+
+	@PreDestroy
+	public void stop() {
+
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/***
+	 * Make all the calls and return their results in the same order
+	 *
+	 * @param description what the calls do, used in the failure message
+	 * @param calls
+	 * @return the results and a failure for each call which failed or timed out
+	 */
+	public <T> FanOutResult<T> invokeAll(String description, List<Callable<T>> calls) {
+
+		long start = System.currentTimeMillis();
+		List<Future<T>> futures = new ArrayList<>(calls.size());
+		long[] deadlines = new long[calls.size()];
+		for (Callable<T> call : calls) {
+			long deadline = System.currentTimeMillis() + callTimeout;
+			deadlines[futures.size()] = deadline;
+			futures.add(this.submit(call, deadline));
+		}
+
+		List<T> results = new ArrayList<>(calls.size());
+		List<String> failures = new ArrayList<>();
+		for (int i = 0; i < futures.size(); i++) {
+			Future<T> future = futures.get(i);
+			try {
+				results.add(future.get(Math.max(0, deadlines[i] - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+			} catch (TimeoutException ex) {
+				future.cancel(true);
+				counterService.increment("identityx.fanout.timed_out");
+				failures.add("call " + (i + 1) + " timed out after " + callTimeout + "ms");
+				results.add(null);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				for (Future<T> remaining : futures) {
+					remaining.cancel(true);
+				}
+				throw new RuntimeException("Interrupted while waiting to " + description, ex);
+			} catch (ExecutionException ex) {
+				counterService.increment("identityx.fanout.failed");
+				failures.add("call " + (i + 1) + " failed: " + ex.getCause().getMessage());
+				results.add(null);
+			}
+		}
+		gaugeService.submit("identityx.fanout.duration", System.currentTimeMillis() - start);
+		gaugeService.submit("identityx.fanout.size", calls.size());
+
+		FanOutResult<T> result = new FanOutResult<>(description, results, failures);
+		if (result.hasFailures()) {
+			logger.error(result.getError());
+		}
+		return result;
+	}
+
+	/***
+	 * Submit the call to the pool, waiting up to its deadline for space in the queue if the pool
+	 * is full, or make it on this thread if fan out is disabled
+	 *
+	 * @param call
+	 * @param deadline the time by which the call must have finished
+	 * @return
+	 */
+	protected <T> Future<T> submit(Callable<T> call, long deadline) {
+
+		if (executor != null) {
+			try {
+				return executor.submit(call);
+			} catch (RejectedExecutionException ex) {
+				counterService.increment("identityx.fanout.queue_full");
+			}
+			FutureTask<T> task = new FutureTask<>(call);
+			try {
+				if (!executor.isShutdown() && executor.getQueue().offer(task, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+					return task;
+				}
+			} catch (InterruptedException ex) {
+				// The wait for the result sees the interrupt and cancels the calls
+				Thread.currentThread().interrupt();
+			}
+			counterService.increment("identityx.fanout.not_started");
+			CompletableFuture<T> notStarted = new CompletableFuture<>();
+			notStarted.completeExceptionally(new TimeoutException("not started within " + callTimeout + "ms as the fan out pool is full"));
+			return notStarted;
+		}
+		CompletableFuture<T> result = new CompletableFuture<>();
+		try {
+			result.complete(call.call());
+		} catch (Exception ex) {
+			result.completeExceptionally(ex);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import java.util.Collection;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.cache.BoundedCache.Loader;
+import com.daon.identityx.cache.SingleFlight;
+
+/***
+ * Shares one IdentityX lookup between the requests which make the same lookup at the same time.
+ *
+ * A lookup is identified by its operation and the href, or ID, of the resource.  While a lookup
+ * is in progress any identical lookup waits for it rather than calling IdentityX again.  The
+ * result is not kept once the lookup completes.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class IdentityXRequestCoalescer implements PublicMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(IdentityXRequestCoalescer.class);
+
+	@Value("${fido.identityx.coalesce.enabled:true}")
+	private boolean enabled;
+
+	private final SingleFlight<String, Object> singleFlight = new SingleFlight<>("identityx.coalesce");
+
+	public IdentityXRequestCoalescer() {
+	}
+
+	@PostConstruct
+	public void initialise() {
+		logger.info("Coalescing of identical IdentityX lookups is {}", enabled ? "enabled" : "disabled");
+	}
+
+	/***
+	 * Make the lookup, or wait for the identical lookup already in progress
+	 *
+	 * @param operation
+	 * @param href
+	 * @param lookup
+	 * @return
+	 * @throws E the exception thrown by the lookup
+	 */
+	@SuppressWarnings("unchecked")
+	public <T, E extends Exception> T execute(String operation, String href, Loader<String, T, E> lookup) throws E {
+
+		if (!enabled) {
+			return lookup.load(href);
+		}
+		return (T) singleFlight.<E>execute(operation + " " + href, key -> lookup.load(href));
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		return singleFlight.metrics();
+	}
+}
@@ -20,15 +20,16 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 
 import javax.annotation.PostConstruct;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.context.annotation.PropertySources;
@@ -36,7 +37,10 @@ import org.springframework.stereotype.Service;
 
 import com.daon.identityx.controller.model.AuthenticatorInfo;
 import com.daon.identityx.controller.model.PolicyInfo;
+import com.daon.identityx.entity.IdXUser;
 import com.daon.identityx.exception.ProcessingException;
+import com.daon.identityx.fido.RegistrationChallengeStore.IssuedChallenge;
+import com.daon.identityx.repository.IdXUserRepository;
 import com.daon.identityx.rest.model.def.AuthenticationRequestStatusEnum;
 import com.daon.identityx.rest.model.def.AuthenticatorStatusEnum;
 import com.daon.identityx.rest.model.pojo.Application;
@@ -75,6 +79,9 @@ import com.identityx.clientSDK.repositories.UserRepository;
 /***
  * The class through which all interactions with IdentityX are performed.
  * 
+ * The TenantRepoFactory is created from the keystore and credentials when the server starts
+ * unless one has been provided, e.g. the FakeTenantRepoFactory of the fake-identityx profile.
+ * 
  * @author Daon
  *
  */
@@ -106,13 +113,27 @@ public class IdentityXServices implements IIdentityXServices {
 	@Value("${fido.credential.properties.location}")
 	private String credentialPropertiesLocation;
 	
+	@Autowired(required = false)
 	private TenantRepoFactory tenantRepoFactory;
 	private Application application;
 	private String regPolicyHref;
 	private String authPolicyHref;
 	private ObjectMapper objectMapper = new ObjectMapper();
 
-	private final Map<String, AuthenticatorType> authenticatorTypesCache = new Hashtable<>();
+	@Autowired
+	private AuthenticatorTypeCache authenticatorTypeCache;
+	@Autowired
+	private IdXUserRepository idXUserRepository;
+	@Autowired
+	private RegistrationChallengeStore registrationChallengeStore;
+	@Autowired
+	private AuthenticatorListCache authenticatorListCache;
+	@Autowired
+	private IdentityXFanOutExecutor fanOutExecutor;
+	@Autowired
+	private AuthRequestPool authRequestPool;
+	@Autowired
+	private IdentityXRequestCoalescer requestCoalescer;
 	
 	
 	public IdentityXServices() {
@@ -120,20 +141,10 @@ public class IdentityXServices implements IIdentityXServices {
 
 	@PostConstruct
 	public void connectToIdentityXServer() {
-		try (InputStream keyStore = new FileInputStream(new File(this.getKeystoreLocation()));
-				InputStream credenitalsProperties = new FileInputStream(new File(this.getCredentialPropertiesLocation()))){
-			EncryptedKeyPropFileCredentialsProvider provider = new EncryptedKeyPropFileCredentialsProvider(
-					keyStore,
-					this.getKeystorePassword(),
-					credenitalsProperties,
-					this.getKeystoreKeyAlias(),
-					this.getKeystoreKeyPassword());
-			tenantRepoFactory = new TenantRepoFactory(provider);
-			logger.info("Connected to the IdentityX Server");
-		} catch (Exception ex) {
-			String error = "An exception occurred while attempting to connect to the IdentityX server.  Exception: " + ex.getMessage();
-			logger.error(error, ex);
-			throw new RuntimeException(error, ex);
+		if (tenantRepoFactory != null) {
+			logger.info("Using the provided tenant repository factory: {}", tenantRepoFactory.getClass().getName());
+		} else {
+			this.createTenantRepoFactory();
 		}
 
 		try {
@@ -171,6 +182,27 @@ public class IdentityXServices implements IIdentityXServices {
 			logger.error(error, ex);
 			throw new RuntimeException(error, ex);
 		}
+
+		this.warmUpAuthenticatorTypes();
+		this.getAuthRequestPool().start(this::createNewAuthRequest);
+	}
+
+	protected void createTenantRepoFactory() {
+		try (InputStream keyStore = new FileInputStream(new File(this.getKeystoreLocation()));
+				InputStream credenitalsProperties = new FileInputStream(new File(this.getCredentialPropertiesLocation()))){
+			EncryptedKeyPropFileCredentialsProvider provider = new EncryptedKeyPropFileCredentialsProvider(
+					keyStore,
+					this.getKeystorePassword(),
+					credenitalsProperties,
+					this.getKeystoreKeyAlias(),
+					this.getKeystoreKeyPassword());
+			tenantRepoFactory = new TenantRepoFactory(provider);
+			logger.info("Connected to the IdentityX Server");
+		} catch (Exception ex) {
+			String error = "An exception occurred while attempting to connect to the IdentityX server.  Exception: " + ex.getMessage();
+			logger.error(error, ex);
+			throw new RuntimeException(error, ex);
+		}
 	}
 
 	/***
@@ -182,6 +214,11 @@ public class IdentityXServices implements IIdentityXServices {
 	@Override
 	public FIDORegChallengeAndId createRegRequest(String email, String fidoId) {
 
+		FIDORegChallengeAndId known = this.createKnownRegRequest(email, fidoId);
+		if (known != null) {
+			return known;
+		}
+
 		try {
 			User user;
 			if (fidoId == null) {
@@ -199,6 +236,8 @@ public class IdentityXServices implements IIdentityXServices {
 			}
 
 			RegistrationChallenge regChallenge = this.addRegistrationChallenge(reg);
+			this.getRegistrationChallengeStore().add(user.getId(), regChallenge);
+			this.getIdXUserRepository().save(new IdXUser(email, user.getId(), user.getHref(), reg.getHref()));
 			FIDORegChallengeAndId regChallengeAndId = new FIDORegChallengeAndId();
 			regChallengeAndId.setIdXId(user.getId());
 			regChallengeAndId.setRegistrationChallenge(regChallenge);
@@ -211,6 +250,41 @@ public class IdentityXServices implements IIdentityXServices {
 		}
 	}
 
+	/***
+	 * Create the FIDO registration request using the registration already known for the email
+	 * address so that only the registration challenge needs to be created in IdentityX.
+	 * If the registration is not known, or can no longer be used, null is returned.
+	 * 
+	 * @param email
+	 * @param fidoId
+	 * @return
+	 */
+	protected FIDORegChallengeAndId createKnownRegRequest(String email, String fidoId) {
+
+		IdXUser idXUser = this.getIdXUserRepository().findByEmail(email);
+		if (idXUser == null) {
+			return null;
+		}
+		if (fidoId != null && !fidoId.equals(idXUser.getUserId())) {
+			logger.debug("The known IdentityX user: {} is not the user: {} - ignoring it", idXUser.getUserId(), fidoId);
+			return null;
+		}
+		try {
+			Registration reg = new Registration(idXUser.getRegistrationHref());
+			reg.setRegistrationId(email);
+			RegistrationChallenge regChallenge = this.addRegistrationChallenge(reg);
+			this.getRegistrationChallengeStore().add(idXUser.getUserId(), regChallenge);
+			FIDORegChallengeAndId regChallengeAndId = new FIDORegChallengeAndId();
+			regChallengeAndId.setIdXId(idXUser.getUserId());
+			regChallengeAndId.setRegistrationChallenge(regChallenge);
+			return regChallengeAndId;
+		} catch (IdxRestException ex) {
+			logger.warn("The known registration of the IdentityX user: {} could not be used - looking it up.  Exception: {}", idXUser.getUserId(), ex.getMessage());
+			this.getIdXUserRepository().delete(idXUser);
+			return null;
+		}
+	}
+
 	/***
 	 * Delete the user with the specified identifier
 	 * 
@@ -227,7 +301,9 @@ public class IdentityXServices implements IIdentityXServices {
 		try {
 			UserRepository userRepo = this.getTenantRepoFactory().getUserRepo();
 			User user = new User(userRepo.getBaseUrl() + userRepo.getResourcePath() + "/" + fidoId);
+			this.getIdXUserRepository().deleteByUserId(fidoId);
 			userRepo.archive(user);
+			this.getAuthenticatorListCache().invalidate(fidoId);
 		} catch (IdxRestException ex) {
 			String error = "An exception occurred while attempting to archive the user: " + fidoId + ".  Exception: " + ex.getMessage();
 			logger.error(error, ex);
@@ -262,6 +338,7 @@ public class IdentityXServices implements IIdentityXServices {
 				throw new RuntimeException(error);
 			}
 			authenticator = authenticatorRepo.archive(authenticator);
+			this.getAuthenticatorListCache().invalidate(fidoId);
 			return authenticator.getFidoDeregistrationRequest();
 		} catch (IdxRestException ex) {
 			String error = "An exception occurred while attempting to archive the authenticator.  Exception: " + ex.getMessage();
@@ -281,37 +358,54 @@ public class IdentityXServices implements IIdentityXServices {
 	public AuthenticatorInfo[] listAuthenticators(String idxId) {
 
 		try {
-			User user = this.getUser(idxId);
-			if (user == null) {
-				String error = "Unable to get the user with ID: " + idxId;
-				logger.error(error);
-				throw new RuntimeException(error);
-			}
-
-			Authenticator[] authenticators = getAuthenticators(user.getAuthenticators().getHref());
-
-			if (authenticators == null || authenticators.length == 0) {
-				return new AuthenticatorInfo[0];
-			}
-
-			// Return authenticators registered by the user which match those available on the client from which the call was made
-			return convertToAuthenticatorInfo(authenticators);
+			return this.getAuthenticatorListCache().list(idxId, this::loadAuthenticators);
 		} catch (IdxRestException ex) {
 			String error = "An exception occurred while attempting to get authenticators.  Exception: " + ex.getMessage();
 			logger.error(error, ex);
 			throw new RuntimeException(error, ex);
 		}
 	}
+
+	/***
+	 * Get the list of FIDO Authenticators for this user from IdentityX
+	 * 
+	 * @param idxId
+	 * @return
+	 * @throws IdxRestException
+	 */
+	protected AuthenticatorInfo[] loadAuthenticators(String idxId) throws IdxRestException {
+
+		User user = this.getUser(idxId);
+		if (user == null) {
+			String error = "Unable to get the user with ID: " + idxId;
+			logger.error(error);
+			throw new RuntimeException(error);
+		}
+
+		Authenticator[] authenticators = getAuthenticators(user.getAuthenticators().getHref());
+
+		if (authenticators == null || authenticators.length == 0) {
+			return new AuthenticatorInfo[0];
+		}
+
+		// Return authenticators registered by the user which match those available on the client from which the call was made
+		return convertToAuthenticatorInfo(authenticators);
+	}
 	
 	/***
 	 * Deactivates all the FIDO authenticators associated with the user and then
 	 * deletes/deactivates the user whose id is supplied.  
 	 * 
+	 * If any authenticator cannot be archived the user is not deleted so that the delete can be
+	 * retried, but the deregistration requests for the authenticators which were archived are
+	 * still returned.  The authenticators of a user who has not been deleted which are already
+	 * archived are returned again, so a retry sends the client every deregistration request.
+	 * 
 	 * @param idxId
 	 * @return
 	 */
 	@Override
-	public AuthenticatorInfo[] deactivateAndDelete(String idxId) {
+	public DeactivationResult deactivateAndDelete(String idxId) {
 		
 		try {
 			User user = this.getUser(idxId);
@@ -321,16 +415,34 @@ public class IdentityXServices implements IIdentityXServices {
 				throw new RuntimeException(error);
 			}
 
-			List<Authenticator> activeFidoAuths = getActiveFidoAuthenticators(user);
-			List<Authenticator> inactiveFidoAuths = deactivateFidoAuthenticators(activeFidoAuths);
-			this.addAuthenticatorTypeAAID(inactiveFidoAuths);
-			Authenticator[] inactiveFidoAuthArray = inactiveFidoAuths.toArray(new Authenticator[0]);
+			List<Authenticator> activeFidoAuths = new ArrayList<>();
+			List<Authenticator> archivedFidoAuths = new ArrayList<>();
+			for (Authenticator auth : getFidoAuthenticators(user)) {
+				if (auth.getStatus() == AuthenticatorStatusEnum.ARCHIVED) {
+					archivedFidoAuths.add(auth);
+				} else {
+					activeFidoAuths.add(auth);
+				}
+			}
+			this.addAuthenticatorTypeAAID(archivedFidoAuths);
+			FanOutResult<Authenticator> archiveResult = deactivateFidoAuthenticators(activeFidoAuths);
+			archivedFidoAuths.addAll(archiveResult.getSuccesses());
+
+			DeactivationResult result = new DeactivationResult();
+			// Return authenticators registered by the user which match those available on the client from which the call was made
+			result.setFidoDeregistrationRequests(convertToAuthenticatorInfo(archivedFidoAuths.toArray(new Authenticator[0])));
+			if (archiveResult.hasFailures()) {
+				logger.error("The user with ID: {} has not been deleted so that the delete can be retried - {}", idxId, archiveResult.getError());
+				this.getAuthenticatorListCache().invalidate(idxId);
+				return result;
+			}
 
 			UserRepository userRepository = this.getTenantRepoFactory().getUserRepo();
+			this.getIdXUserRepository().deleteByUserId(idxId);
 			userRepository.archive(user);
-			
-			// Return authenticators registered by the user which match those available on the client from which the call was made
-			return convertToAuthenticatorInfo(inactiveFidoAuthArray);
+			this.getAuthenticatorListCache().invalidate(idxId);
+			result.setUserDeleted(true);
+			return result;
 			
 		} catch (IdxRestException ex) {
 			String error = "An exception occurred while attempting to get authenticators.  Exception: " + ex.getMessage();
@@ -341,45 +453,86 @@ public class IdentityXServices implements IIdentityXServices {
 	
 	protected AuthenticatorType getAuthenticatorType(String href) throws IdxRestException {
 
-		if (this.getAuthenticatorTypesCache().containsKey(href)) {
-			return this.getAuthenticatorTypesCache().get(href);
-		} else {
+		return this.getAuthenticatorTypeCache().get(href, typeHref -> {
 			AuthenticatorTypeRepository typeRepo = this.getTenantRepoFactory().getAuthenticatorTypeRepo();
-			AuthenticatorType type = typeRepo.get(href);
-			this.getAuthenticatorTypesCache().put(href, type);
-			return type;
+			return typeRepo.get(typeHref);
+		});
+	}
+
+	/***
+	 * Load the authenticator types listed to be warmed up into the cache.  A type which cannot
+	 * be loaded is logged and left to be loaded when it is first needed.
+	 */
+	protected void warmUpAuthenticatorTypes() {
+
+		String[] typeIds = this.getAuthenticatorTypeCache().getWarmUpIds();
+		if (typeIds == null || typeIds.length == 0) {
+			return;
+		}
+		AuthenticatorTypeRepository typeRepo = this.getTenantRepoFactory().getAuthenticatorTypeRepo();
+		int loaded = 0;
+		for (String typeId : typeIds) {
+			if (typeId.trim().isEmpty()) {
+				continue;
+			}
+			try {
+				this.getAuthenticatorTypeCache().put(typeRepo.getById(typeId.trim()));
+				loaded++;
+			} catch (IdxRestException ex) {
+				logger.warn("The authenticator type: {} could not be loaded.  Exception: {}", typeId, ex.getMessage());
+			}
 		}
+		logger.info("Loaded {} authenticator types into the cache", loaded);
 	}
 
-	protected List<Authenticator> getActiveFidoAuthenticators(User user) throws IdxRestException {
+	/***
+	 * The FIDO authenticators of the user, both active and archived
+	 * 
+	 * @param user
+	 * @return
+	 * @throws IdxRestException
+	 */
+	protected List<Authenticator> getFidoAuthenticators(User user) throws IdxRestException {
 		
-		List<Authenticator> activeFidoAuths = new ArrayList<>();
+		List<Authenticator> fidoAuths = new ArrayList<>();
 		Authenticator[] authenticators = getAuthenticators(user.getAuthenticators().getHref());
 
 		if (authenticators == null || authenticators.length == 0) {
-			return activeFidoAuths;
+			return fidoAuths;
 		}
 		for(Authenticator auth : authenticators) {
-			if (auth.getStatus() == AuthenticatorStatusEnum.ARCHIVED) {
-				continue;
-			}
 			if (!auth.getType().equals(FIDO_AUTHENTICATOR_TYPE)) {
 				continue;
 			}
-			activeFidoAuths.add(auth);
+			fidoAuths.add(auth);
 		}
-		return activeFidoAuths;
+		return fidoAuths;
 	}
 	
-	protected List<Authenticator> deactivateFidoAuthenticators(List<Authenticator> activeFidoAuths) throws IdxRestException {
+	/***
+	 * Archives the authenticators and adds the AAID of their type.  The authenticators are archived
+	 * at the same time - the result holds each authenticator which was archived and a failure for
+	 * each which was not.
+	 * 
+	 * @param activeFidoAuths
+	 * @return the archived authenticators
+	 */
+	protected FanOutResult<Authenticator> deactivateFidoAuthenticators(List<Authenticator> activeFidoAuths) {
 		
-		List<Authenticator> inactiveFidoAuths = new ArrayList<>();
 		AuthenticatorRepository authRepo = this.getTenantRepoFactory().getAuthenticatorRepo();
-		
+		List<Callable<Authenticator>> archiveCalls = new ArrayList<>(activeFidoAuths.size());
 		for(Authenticator auth : activeFidoAuths) {
-			inactiveFidoAuths.add(authRepo.archive(auth));
+			archiveCalls.add(() -> {
+				try {
+					Authenticator inactiveAuth = authRepo.archive(auth);
+					this.addAuthenticatorTypeAAID(Collections.singletonList(inactiveAuth));
+					return inactiveAuth;
+				} catch (IdxRestException ex) {
+					throw new RuntimeException("Authenticator: " + auth.getId() + " - " + ex.getMessage(), ex);
+				}
+			});
 		}
-		return inactiveFidoAuths;
+		return this.getFanOutExecutor().invokeAll("archive the authenticators", archiveCalls);
 	}
 
 	/***
@@ -401,13 +554,29 @@ public class IdentityXServices implements IIdentityXServices {
 
 	
 	/***
-	 * Create a FIDO authentication request to be sent to the FIDO client
+	 * Create a FIDO authentication request to be sent to the FIDO client.
+	 * A request is taken from the pool if there is one.
 	 * 
 	 * @return
 	 */
 	@Override
 	public AuthenticationRequest createAuthRequest() {
 
+		AuthenticationRequest pooled = this.getAuthRequestPool().take();
+		if (pooled != null) {
+			logger.debug("Took an authentication request from the pool, - authRequestId: {}", pooled.getId());
+			return pooled;
+		}
+		return this.createNewAuthRequest();
+	}
+
+	/***
+	 * Create a new FIDO authentication request in IdentityX
+	 * 
+	 * @return
+	 */
+	public AuthenticationRequest createNewAuthRequest() {
+
 		try {
 			AuthenticationRequest request = new AuthenticationRequest();
 			request.setPolicy(new Policy(this.getAuthPolicyHref()));
@@ -483,14 +652,23 @@ public class IdentityXServices implements IIdentityXServices {
 
 		try {
 			RegistrationChallengeRepository regChallengeRepo = this.getTenantRepoFactory().getRegistrationChallengeRepo();
-			RegistrationChallenge regChallenge = regChallengeRepo.get(regChallengeHref);
-			if (regChallenge == null) {
-				String error = "Unable to find the registration challenge with HREF: " + regChallengeHref;
-				logger.error(error);
-				throw new RuntimeException(error);
+			RegistrationChallenge regChallenge;
+			String userId;
+			IssuedChallenge issuedChallenge = this.getRegistrationChallengeStore().take(regChallengeHref);
+			if (issuedChallenge != null) {
+				// The challenge was created by this server so its owner is already known
+				regChallenge = issuedChallenge.getRegChallenge();
+				userId = issuedChallenge.getIdxId();
+			} else {
+				regChallenge = regChallengeRepo.get(regChallengeHref);
+				if (regChallenge == null) {
+					String error = "Unable to find the registration challenge with HREF: " + regChallengeHref;
+					logger.error(error);
+					throw new RuntimeException(error);
+				}
+				Registration registration = this.getRegistrationFromHref(regChallenge.getRegistration().getHref());
+				userId = this.getIdFromHref(registration.getUser().getHref());
 			}
-			Registration registration = this.getRegistrationFromHref(regChallenge.getRegistration().getHref());
-			String userId = this.getIdFromHref(registration.getUser().getHref());
 			if (!idxId.equals(userId)){
 				String error = "The registration response does not belong to the IdentityX user with ID: " + idxId
 							+ " Expecting: " + idxId + " retrieved: " + userId;
@@ -499,6 +677,7 @@ public class IdentityXServices implements IIdentityXServices {
 			}
 			regChallenge.setFidoRegistrationResponse(fidoRegChallengeResponse);
 			regChallenge = regChallengeRepo.update(regChallenge);
+			this.getAuthenticatorListCache().invalidate(idxId);
 
 			return regChallenge;
 
@@ -530,11 +709,11 @@ public class IdentityXServices implements IIdentityXServices {
 			request.setFidoAuthenticationResponse(authResponse);
 			request = authenticationRequestRepo.update(request);
 			
-			// User was authenticated
+			// User was authenticated - the caller finds the account from the user ID in the href
+			// so the user is not retrieved
 			if (request.getStatus() == AuthenticationRequestStatusEnum.COMPLETED_SUCCESSFUL) {
-				UserRepository userRepo = this.getTenantRepoFactory().getUserRepo();
-				if (request.getUser() != null) {
-					request.setUser(userRepo.get(request.getUser().getHref()));
+				if (request.getUser() != null && request.getUser().getId() == null) {
+					request.getUser().setId(this.getIdFromHref(request.getUser().getHref()));
 				}
 				return request;
 			}
@@ -607,6 +786,11 @@ public class IdentityXServices implements IIdentityXServices {
 	@Override
 	public AuthenticatorInfo getAuthenticator(String idxId, String id) {
 	
+		// An authenticator held for the user is known to belong to the user
+		AuthenticatorInfo cachedAuthInfo = this.getAuthenticatorListCache().getAuthenticator(idxId, id);
+		if (cachedAuthInfo != null) {
+			return cachedAuthInfo;
+		}
 		try {
 			AuthenticatorRepository authRepo = this.getTenantRepoFactory().getAuthenticatorRepo();
 			Authenticator authenticator = authRepo.getById(id);
@@ -618,6 +802,7 @@ public class IdentityXServices implements IIdentityXServices {
 				throw new RuntimeException(error);
 			}
 			AuthenticatorInfo authInfo = this.convert(authenticator);
+			this.getAuthenticatorListCache().putAuthenticator(idxId, authInfo);
 			return authInfo;
 		} catch (IdxRestException ex) {
 			String error = "An exception occurred while attempting to retrieve the authenticator.  Exception: " + ex.getMessage();
@@ -649,6 +834,17 @@ public class IdentityXServices implements IIdentityXServices {
 		}
 	}
 
+	@Override
+	public PolicyInfo getPolicyInfo(String policyHref) {
+		try {
+			return this.convert(getPolicy(policyHref));
+		} catch (IdxRestException ex) {
+			String error = "An exception occurred while attempting to retrieve the policy: " + policyHref + ".  Exception: " + ex.getMessage();
+			logger.error(error, ex);
+			throw new RuntimeException(error, ex);
+		}
+	}
+
 
 	/***
 	 * Find the application within IdentityX where the is retrieved from the "applicationId" property.
@@ -659,19 +855,21 @@ public class IdentityXServices implements IIdentityXServices {
 	 */
 	protected Application findApplication() throws IdxRestException {
 
-		ApplicationRepository applicationRepo = tenantRepoFactory.getApplicationRepo();
-		ApplicationQueryHolder holder = new ApplicationQueryHolder();
-		holder.getSearchSpec().setApplicationId(this.getApplicationId());
-		ApplicationCollection applicationCollection = applicationRepo.list(holder);
-
-		switch (applicationCollection.getItems().length) {
-		case 0:
-			throw new RuntimeException("Could not find an application with the ApplicationId: " + this.getApplicationId());
-		case 1:
-			return applicationCollection.getItems()[0];
-		default:
-			throw new RuntimeException("More than one application with the same ApplicationId!!!!");
-		}
+		return this.getRequestCoalescer().execute("findApplication", this.getApplicationId(), applicationId -> {
+			ApplicationRepository applicationRepo = tenantRepoFactory.getApplicationRepo();
+			ApplicationQueryHolder holder = new ApplicationQueryHolder();
+			holder.getSearchSpec().setApplicationId(applicationId);
+			ApplicationCollection applicationCollection = applicationRepo.list(holder);
+
+			switch (applicationCollection.getItems().length) {
+			case 0:
+				throw new RuntimeException("Could not find an application with the ApplicationId: " + applicationId);
+			case 1:
+				return applicationCollection.getItems()[0];
+			default:
+				throw new RuntimeException("More than one application with the same ApplicationId!!!!");
+			}
+		});
 	}
 
 	/***
@@ -684,8 +882,10 @@ public class IdentityXServices implements IIdentityXServices {
 	 * @throws IdxRestException
 	 */
 	protected Policy getPolicy(String policyHref) throws IdxRestException {
-		PolicyRepository policyRepo = this.getTenantRepoFactory().getPolicyRepo();
-		return policyRepo.get(policyHref);
+		return this.getRequestCoalescer().execute("getPolicy", policyHref, href -> {
+			PolicyRepository policyRepo = this.getTenantRepoFactory().getPolicyRepo();
+			return policyRepo.get(href);
+		});
 	}
 
 	/***
@@ -886,6 +1086,19 @@ public class IdentityXServices implements IIdentityXServices {
 		}
 	}
 
+	@Override
+	public String getUserEmail(String idxId) {
+
+		try {
+			User user = this.getUser(idxId);
+			return user == null ? null : user.getUserId();
+		} catch (IdxRestException ex) {
+			String error = "An exception occurred while attempting to get the user: " + idxId + ".  Exception: " + ex.getMessage();
+			logger.error(error, ex);
+			throw new RuntimeException(error, ex);
+		}
+	}
+
 	/***
 	 * Gets the user from IdentityX with the specified ID
 	 * 
@@ -1024,6 +1237,7 @@ public class IdentityXServices implements IIdentityXServices {
 		this.application = application;
 	}
 
+	@Override
 	public String getRegPolicyHref() {
 		return regPolicyHref;
 	}
@@ -1032,6 +1246,7 @@ public class IdentityXServices implements IIdentityXServices {
 		this.regPolicyHref = regPolicyHref;
 	}
 
+	@Override
 	public String getAuthPolicyHref() {
 		return authPolicyHref;
 	}
@@ -1084,8 +1299,60 @@ public class IdentityXServices implements IIdentityXServices {
 		this.credentialPropertiesLocation = credentialPropertiesLocation;
 	}
 
-	public Map<String, AuthenticatorType> getAuthenticatorTypesCache() {
-		return authenticatorTypesCache;
+	public AuthenticatorTypeCache getAuthenticatorTypeCache() {
+		return authenticatorTypeCache;
+	}
+
+	public void setAuthenticatorTypeCache(AuthenticatorTypeCache authenticatorTypeCache) {
+		this.authenticatorTypeCache = authenticatorTypeCache;
+	}
+
+	public IdXUserRepository getIdXUserRepository() {
+		return idXUserRepository;
+	}
+
+	public void setIdXUserRepository(IdXUserRepository idXUserRepository) {
+		this.idXUserRepository = idXUserRepository;
+	}
+
+	public RegistrationChallengeStore getRegistrationChallengeStore() {
+		return registrationChallengeStore;
+	}
+
+	public void setRegistrationChallengeStore(RegistrationChallengeStore registrationChallengeStore) {
+		this.registrationChallengeStore = registrationChallengeStore;
+	}
+
+	public AuthenticatorListCache getAuthenticatorListCache() {
+		return authenticatorListCache;
+	}
+
+	public void setAuthenticatorListCache(AuthenticatorListCache authenticatorListCache) {
+		this.authenticatorListCache = authenticatorListCache;
+	}
+
+	public IdentityXFanOutExecutor getFanOutExecutor() {
+		return fanOutExecutor;
+	}
+
+	public void setFanOutExecutor(IdentityXFanOutExecutor fanOutExecutor) {
+		this.fanOutExecutor = fanOutExecutor;
+	}
+
+	public AuthRequestPool getAuthRequestPool() {
+		return authRequestPool;
+	}
+
+	public void setAuthRequestPool(AuthRequestPool authRequestPool) {
+		this.authRequestPool = authRequestPool;
+	}
+
+	public IdentityXRequestCoalescer getRequestCoalescer() {
+		return requestCoalescer;
+	}
+
+	public void setRequestCoalescer(IdentityXRequestCoalescer requestCoalescer) {
+		this.requestCoalescer = requestCoalescer;
 	}
 
 }
@@ -0,0 +1,273 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.controller.model.PolicyInfo;
+
+/***
+ * Holds the converted policies by their href so that a request for a policy does not need
+ * to get the policy from IdentityX and convert its FIDO policy to JSON.
+ *
+ * A policy younger than the TTL is returned as is.  A policy older than the TTL but within the
+ * stale period is still returned straight away while it is reloaded in the background, so a slow
+ * IdentityX does not hold up the request.  A policy which is missing or older than both is loaded
+ * by the request, only one request loading each policy at a time.  If that load fails the old
+ * policy, if there is one, is returned.
+ *
+ * Every policy held is also reloaded every refresh interval, and all of them can be reloaded on
+ * demand after a policy has been changed in IdentityX.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class PolicyCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(PolicyCache.class);
+
+	@Autowired
+	private IIdentityXServices identityXServices;
+	@Autowired
+	private CounterService counterService;
+
+	@Value("${fido.policy.cache.ttl:600000}")
+	private long ttl;
+	@Value("${fido.policy.cache.stale_period:3600000}")
+	private long stalePeriod;
+	@Value("${fido.policy.cache.refresh_interval:300000}")
+	private long refreshInterval;
+
+	private final ConcurrentHashMap<String, CachedPolicy> policies = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Object> loadLocks = new ConcurrentHashMap<>();
+	private ScheduledExecutorService refresher;
+
+	public PolicyCache() {
+	}
+
+	@PostConstruct
+	public void start() {
+
+		refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "policy-refresher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (refreshInterval > 0) {
+			refresher.scheduleWithFixedDelay(this::refreshAll, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+		}
+		logger.info("Started the policy refresher - interval: {}ms, TTL: {}ms, stale period: {}ms", refreshInterval, ttl, stalePeriod);
+	}
+
+	@PreDestroy
+	public void stop() {
+		refresher.shutdownNow();
+	}
+
+	/***
+	 * Get the registration policy information
+	 *
+	 * @return
+	 */
+	public PolicyInfo getRegistrationPolicyInfo() {
+		return this.get(identityXServices.getRegPolicyHref());
+	}
+
+	/***
+	 * Get the authentication policy information
+	 *
+	 * @return
+	 */
+	public PolicyInfo getAuthenticationPolicyInfo() {
+		return this.get(identityXServices.getAuthPolicyHref());
+	}
+
+	/***
+	 * Get the information of the policy with the href
+	 *
+	 * @param policyHref
+	 * @return
+	 */
+	public PolicyInfo get(String policyHref) {
+
+		CachedPolicy cached = policies.get(policyHref);
+		long now = System.currentTimeMillis();
+		if (cached != null) {
+			long age = now - cached.getLoadedAt();
+			if (age < ttl) {
+				return cached.getPolicyInfo();
+			}
+			if (age < ttl + stalePeriod) {
+				counterService.increment("policy.cache.stale");
+				this.revalidate(policyHref, cached);
+				return cached.getPolicyInfo();
+			}
+		}
+
+		synchronized (loadLocks.computeIfAbsent(policyHref, href -> new Object())) {
+			CachedPolicy current = policies.get(policyHref);
+			if (current != null && current != cached) {
+				return current.getPolicyInfo();
+			}
+			counterService.increment("policy.cache.miss");
+			try {
+				return this.load(policyHref).getPolicyInfo();
+			} catch (RuntimeException ex) {
+				if (current == null) {
+					throw ex;
+				}
+				logger.warn("The policy: {} could not be loaded - returning the policy loaded at: {}", policyHref, current.getLoadedAt());
+				return current.getPolicyInfo();
+			}
+		}
+	}
+
+	/***
+	 * Reload every policy held, or the registration and authentication policies if none are held
+	 *
+	 * @return the reloaded policies
+	 */
+	public List<PolicyInfo> reload() {
+
+		List<String> policyHrefs = new ArrayList<>(policies.keySet());
+		if (policyHrefs.isEmpty()) {
+			policyHrefs.add(identityXServices.getRegPolicyHref());
+			policyHrefs.add(identityXServices.getAuthPolicyHref());
+		}
+		List<PolicyInfo> reloaded = new ArrayList<>(policyHrefs.size());
+		for (String policyHref : policyHrefs) {
+			synchronized (loadLocks.computeIfAbsent(policyHref, href -> new Object())) {
+				reloaded.add(this.load(policyHref).getPolicyInfo());
+			}
+		}
+		logger.info("Reloaded {} policies", reloaded.size());
+		return reloaded;
+	}
+
+	/***
+	 * Reload the stale policy in the background unless it is already being reloaded
+	 *
+	 * @param policyHref
+	 * @param cached
+	 */
+	protected void revalidate(String policyHref, CachedPolicy cached) {
+
+		if (!cached.startRevalidating()) {
+			return;
+		}
+		try {
+			refresher.execute(() -> {
+				try {
+					synchronized (loadLocks.computeIfAbsent(policyHref, href -> new Object())) {
+						if (policies.get(policyHref) == cached) {
+							this.load(policyHref);
+						}
+					}
+				} catch (Exception ex) {
+					counterService.increment("policy.cache.refresh_failed");
+					logger.error("An exception occurred while attempting to reload the policy: " + policyHref + ".  Exception: " + ex.getMessage(), ex);
+				} finally {
+					cached.stopRevalidating();
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			cached.stopRevalidating();
+		}
+	}
+
+	/***
+	 * Reload every policy held
+	 */
+	protected void refreshAll() {
+
+		for (String policyHref : policies.keySet()) {
+			try {
+				synchronized (loadLocks.computeIfAbsent(policyHref, href -> new Object())) {
+					this.load(policyHref);
+				}
+			} catch (Exception ex) {
+				counterService.increment("policy.cache.refresh_failed");
+				logger.error("An exception occurred while attempting to refresh the policy: " + policyHref + ".  Exception: " + ex.getMessage(), ex);
+			}
+		}
+	}
+
+	/***
+	 * Load the policy from IdentityX and hold it.  The caller must hold the load lock of the policy.
+	 *
+	 * @param policyHref
+	 * @return
+	 */
+	protected CachedPolicy load(String policyHref) {
+
+		PolicyInfo policyInfo = identityXServices.getPolicyInfo(policyHref);
+		CachedPolicy loaded = new CachedPolicy(policyInfo, System.currentTimeMillis());
+		policies.put(policyHref, loaded);
+		logger.debug("Loaded the policy: {}", policyHref);
+		return loaded;
+	}
+
+	/***
+	 * A converted policy and when it was loaded
+	 */
+	protected static class CachedPolicy {
+
+		private final PolicyInfo policyInfo;
+		private final long loadedAt;
+		private final AtomicBoolean revalidating = new AtomicBoolean();
+
+		CachedPolicy(PolicyInfo policyInfo, long loadedAt) {
+			this.policyInfo = policyInfo;
+			this.loadedAt = loadedAt;
+		}
+
+		PolicyInfo getPolicyInfo() {
+			return policyInfo;
+		}
+
+		long getLoadedAt() {
+			return loadedAt;
+		}
+
+		boolean startRevalidating() {
+			return revalidating.compareAndSet(false, true);
+		}
+
+		void stopRevalidating() {
+			revalidating.set(false);
+		}
+	}
+}
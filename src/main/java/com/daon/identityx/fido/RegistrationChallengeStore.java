@@ -0,0 +1,114 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import java.util.Collection;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.cache.BoundedCache;
+import com.daon.identityx.rest.model.pojo.RegistrationChallenge;
+
+/***
+ * Remembers the registration challenges this server has created and the IdentityX user each
+ * was created for.  When the registration response arrives the challenge's owner can be
+ * checked without getting the challenge and its registration from IdentityX.
+ *
+ * The challenges are only held in memory for the TTL and each is given up once its response
+ * has been submitted.  A challenge which is not held, for example one created before a restart
+ * or by another server, is checked against IdentityX as before.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class RegistrationChallengeStore implements PublicMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(RegistrationChallengeStore.class);
+
+	@Value("${fido.reg_challenge.store.max_size:10000}")
+	private int maxSize;
+	@Value("${fido.reg_challenge.store.ttl:300000}")
+	private long ttl;
+
+	private BoundedCache<String, IssuedChallenge> challenges;
+
+	public RegistrationChallengeStore() {
+	}
+
+	@PostConstruct
+	public void initialise() {
+
+		challenges = new BoundedCache<>("reg_challenge.store", maxSize, ttl);
+		logger.info("Created the registration challenge store - max size: {}, TTL: {}ms", maxSize, ttl);
+	}
+
+	/***
+	 * Remember the challenge created for the IdentityX user
+	 *
+	 * @param idxId
+	 * @param regChallenge
+	 */
+	public void add(String idxId, RegistrationChallenge regChallenge) {
+		challenges.put(regChallenge.getHref(), new IssuedChallenge(idxId, regChallenge));
+	}
+
+	/***
+	 * Remove the challenge with the href and return it
+	 *
+	 * @param regChallengeHref
+	 * @return the challenge or null if it is not held
+	 */
+	public IssuedChallenge take(String regChallengeHref) {
+		return challenges.take(regChallengeHref);
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		return challenges.metrics();
+	}
+
+	/***
+	 * A registration challenge and the IdentityX user it was created for
+	 */
+	public static class IssuedChallenge {
+
+		private final String idxId;
+		private final RegistrationChallenge regChallenge;
+
+		IssuedChallenge(String idxId, RegistrationChallenge regChallenge) {
+			this.idxId = idxId;
+			this.regChallenge = regChallenge;
+		}
+
+		public String getIdxId() {
+			return idxId;
+		}
+
+		public RegistrationChallenge getRegChallenge() {
+			return regChallenge;
+		}
+	}
+}
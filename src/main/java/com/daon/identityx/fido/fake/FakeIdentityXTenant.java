@@ -0,0 +1,835 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido.fake;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.context.annotation.PropertySources;
+import org.springframework.stereotype.Component;
+
+import com.daon.identityx.rest.model.def.AuthenticationRequestStatusEnum;
+import com.daon.identityx.rest.model.def.AuthenticatorStatusEnum;
+import com.daon.identityx.rest.model.pojo.Application;
+import com.daon.identityx.rest.model.pojo.AuthenticationRequest;
+import com.daon.identityx.rest.model.pojo.Authenticator;
+import com.daon.identityx.rest.model.pojo.AuthenticatorType;
+import com.daon.identityx.rest.model.pojo.FIDOFacets;
+import com.daon.identityx.rest.model.pojo.Link;
+import com.daon.identityx.rest.model.pojo.Policy;
+import com.daon.identityx.rest.model.pojo.Registration;
+import com.daon.identityx.rest.model.pojo.RegistrationChallenge;
+import com.daon.identityx.rest.model.pojo.Resource;
+import com.daon.identityx.rest.model.pojo.User;
+import com.daon.identityx.utils.IdGenerator;
+import com.identityx.clientSDK.exceptions.IdxRestException;
+
+/***
+ * An in memory IdentityX tenant so that the server can be run, load tested and profiled without
+ * an IdentityX tenant or a network.  It is used through the FakeTenantRepoFactory, which the
+ * IdentityXServices uses in place of the SDK's factory, so all of the IdentityXServices - its
+ * caches, the request pool, the coalescing and the fan out - run as they do against IdentityX.
+ *
+ * The fake is only created when the "fake-identityx" profile is active and it refuses to start
+ * unless fido.identityx.fake.enabled is also true, so it cannot be switched on by the profile
+ * alone.  Everything is held in memory and lost on restart.
+ *
+ * The FIDO messages are not real UAF messages.  Each registration challenge and authentication
+ * request carries a random challenge.  A registration response registers a new authenticator if
+ * it contains the challenge of its registration challenge, and the response message is the ID of
+ * the new authenticator.  An authentication response is the ID of the authenticator and the
+ * challenge of the request separated by a colon, so a response is only accepted for the request
+ * it was made for.  Failures are returned with the UAF status codes the IdentityXServices handles.
+ *
+ * Every repository operation waits for a latency drawn from the configured distribution and fails
+ * with the configured error rate with an IdxRestException, as the SDK would, so that the caching
+ * and resilience of the server can be tested.
+ *
+ * @author Daon
+ *
+ */
+@Component
+@Profile(FakeIdentityXTenant.PROFILE)
+@PropertySources({
+	@PropertySource("classpath:fido_config.properties"),
+	@PropertySource(value="file:fido_config.properties", ignoreResourceNotFound=true)
+})
+public class FakeIdentityXTenant {
+
+	private static final Logger logger = LoggerFactory.getLogger(FakeIdentityXTenant.class);
+
+	public static final String PROFILE = "fake-identityx";
+	public static final String BASE_URL = "fake://identityx";
+
+	private static final String FIDO_AUTHENTICATION_TYPE = "FI";
+	private static final String FIDO_AUTHENTICATOR_TYPE = "FI";
+	private static final long OK = 1200L;
+	private static final long UNAUTHORIZED = 1401L;
+	private static final long UNKNOWN_KEY_ID = 1481L;
+	private static final long REQUEST_INVALID = 1491L;
+	private static final long REVOKED_AUTHENTICATOR = 1493L;
+
+	public enum LatencyDistribution {
+		FIXED, UNIFORM, EXPONENTIAL
+	}
+
+	@Value("${fido.identityx.fake.enabled:false}")
+	private boolean enabled;
+	@Value("${fido.application_id:FakeApp}")
+	private String applicationId;
+	@Value("${fido.reg_policy_id:RegPolicy1}")
+	private String regPolicyId;
+	@Value("${fido.auth_policy_id:AuthPolicy1}")
+	private String authPolicyId;
+	@Value("${fido.identityx.fake.facet_ids:https://localhost:8443}")
+	private String[] facetIds;
+	@Value("${fido.identityx.fake.latency:0}")
+	private long latency;
+	@Value("${fido.identityx.fake.latency_distribution:EXPONENTIAL}")
+	private LatencyDistribution latencyDistribution;
+	@Value("${fido.identityx.fake.latency_max:5000}")
+	private long latencyMax;
+	@Value("${fido.identityx.fake.error_rate:0}")
+	private double errorRate;
+	@Value("${fido.identityx.fake.error_operations:}")
+	private String[] errorOperations;
+	@Value("${fido.identityx.fake.request_expiry:120000}")
+	private long requestExpiry;
+
+	private final ConcurrentHashMap<String, FakeUser> users = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, String> userIds = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, FakeRegistration> registrations = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, FakeChallenge> challenges = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, FakeAuthRequest> authRequests = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, FakeAuthenticator> authenticators = new ConcurrentHashMap<>();
+	private final Map<String, Policy> policies = new LinkedHashMap<>();
+	private Application application;
+	private AuthenticatorType authenticatorType;
+	private Set<String> failingOperations;
+
+	public FakeIdentityXTenant() {
+	}
+
+	@PostConstruct
+	public void initialise() {
+
+		if (!enabled) {
+			String error = "The " + PROFILE + " profile is active but fido.identityx.fake.enabled is not true - "
+					+ "set it to run against the fake IdentityX";
+			logger.error(error);
+			throw new IllegalStateException(error);
+		}
+		application = new Application(BASE_URL + "/applications/" + applicationId);
+		application.setId(applicationId);
+		application.setApplicationId(applicationId);
+		application.setCreated(new Date());
+		application.setPolicies(new Link(application.getHref() + "/policies"));
+		application.setFidoFacets(this.createFacets());
+
+		authenticatorType = new AuthenticatorType(BASE_URL + "/authenticatorTypes/fake");
+		authenticatorType.setId("fake");
+		authenticatorType.setAaid("FAKE#0001");
+		authenticatorType.setName("Fake Authenticator");
+		authenticatorType.setDescription("An authenticator registered with the fake IdentityX");
+		authenticatorType.setVendorName("Daon");
+
+		this.addPolicy(regPolicyId, "REG");
+		this.addPolicy(authPolicyId, "AUTH");
+		failingOperations = new HashSet<>();
+		for (String operation : errorOperations) {
+			if (!operation.trim().isEmpty()) {
+				failingOperations.add(operation.trim());
+			}
+		}
+		logger.warn("Using the FAKE IdentityX - latency: {}ms {} (max {}ms), error rate: {}%, failing operations: {}", latency,
+				latencyDistribution, latencyMax, errorRate, failingOperations.isEmpty() ? "all" : failingOperations);
+	}
+
+	// Applications and policies
+
+	public Application[] listApplications(String anApplicationId) throws IdxRestException {
+
+		this.simulate("applications.list");
+		if (anApplicationId == null || anApplicationId.equals(applicationId)) {
+			return new Application[] { application };
+		}
+		return new Application[0];
+	}
+
+	public Application getApplication(String id) throws IdxRestException {
+
+		this.simulate("applications.get");
+		return applicationId.equals(id) ? application : null;
+	}
+
+	public Policy[] listPolicies(String applicationPoliciesHref, String policyId) throws IdxRestException {
+
+		this.simulate("policies.list");
+		if (!application.getPolicies().getHref().equals(applicationPoliciesHref)) {
+			return new Policy[0];
+		}
+		List<Policy> found = new ArrayList<>();
+		for (Policy policy : policies.values()) {
+			if (policyId == null || policyId.equals(policy.getPolicyId())) {
+				found.add(policy);
+			}
+		}
+		return found.toArray(new Policy[0]);
+	}
+
+	public Policy getPolicy(String id) throws IdxRestException {
+
+		this.simulate("policies.get");
+		return policies.get(id);
+	}
+
+	public AuthenticatorType getAuthenticatorType(String id) throws IdxRestException {
+
+		this.simulate("authenticatorTypes.get");
+		if (!authenticatorType.getId().equals(id)) {
+			throw new IdxRestException("Unable to find the authenticator type with ID: " + id);
+		}
+		return authenticatorType;
+	}
+
+	// Users
+
+	public User[] listUsers(String userId) throws IdxRestException {
+
+		this.simulate("users.list");
+		List<User> found = new ArrayList<>();
+		if (userId == null) {
+			for (FakeUser user : users.values()) {
+				if (!user.archived) {
+					found.add(this.toUser(user));
+				}
+			}
+		} else {
+			String id = userIds.get(userId);
+			FakeUser user = id == null ? null : users.get(id);
+			if (user != null && !user.archived) {
+				found.add(this.toUser(user));
+			}
+		}
+		return found.toArray(new User[0]);
+	}
+
+	public User getUser(String id) throws IdxRestException {
+
+		this.simulate("users.get");
+		FakeUser user = id == null ? null : users.get(id);
+		return user == null || user.archived ? null : this.toUser(user);
+	}
+
+	public User createUser(User aUser) throws IdxRestException {
+
+		this.simulate("users.create");
+		if (aUser.getUserId() == null || aUser.getUserId().isEmpty()) {
+			throw new IdxRestException("The UserId of the user is required");
+		}
+		FakeUser user = new FakeUser(IdGenerator.newId(), aUser.getUserId());
+		if (userIds.putIfAbsent(user.userId, user.id) != null) {
+			throw new IdxRestException("A user with the UserId: " + user.userId + " already exists");
+		}
+		users.put(user.id, user);
+		return this.toUser(user);
+	}
+
+	public User archiveUser(User aUser) throws IdxRestException {
+
+		this.simulate("users.archive");
+		FakeUser user = users.get(this.getId(aUser));
+		if (user == null) {
+			throw new IdxRestException("Unable to find the user with HREF: " + aUser.getHref());
+		}
+		user.archived = true;
+		userIds.remove(user.userId, user.id);
+		return this.toUser(user);
+	}
+
+	// Registrations
+
+	public Registration[] listRegistrations(String userRegistrationsHref, String registrationId) throws IdxRestException {
+
+		this.simulate("registrations.list");
+		FakeUser user = users.get(this.getOwnerId(userRegistrationsHref, "/registrations"));
+		List<Registration> found = new ArrayList<>();
+		if (user != null) {
+			for (String id : user.registrationIds) {
+				FakeRegistration registration = registrations.get(id);
+				if (!registration.archived && (registrationId == null || registrationId.equals(registration.registrationId))) {
+					found.add(this.toRegistration(registration));
+				}
+			}
+		}
+		return found.toArray(new Registration[0]);
+	}
+
+	public Registration getRegistration(String id) throws IdxRestException {
+
+		this.simulate("registrations.get");
+		FakeRegistration registration = id == null ? null : registrations.get(id);
+		return registration == null ? null : this.toRegistration(registration);
+	}
+
+	public Registration createRegistration(Registration aRegistration) throws IdxRestException {
+
+		this.simulate("registrations.create");
+		FakeUser user = this.getActiveUser(aRegistration.getUser());
+		FakeRegistration registration = new FakeRegistration(IdGenerator.newId(), aRegistration.getRegistrationId(), user.id);
+		registrations.put(registration.id, registration);
+		user.registrationIds.add(registration.id);
+		return this.toRegistration(registration);
+	}
+
+	public Registration archiveRegistration(Registration aRegistration) throws IdxRestException {
+
+		this.simulate("registrations.archive");
+		FakeRegistration registration = registrations.get(this.getId(aRegistration));
+		if (registration == null) {
+			throw new IdxRestException("Unable to find the registration with HREF: " + aRegistration.getHref());
+		}
+		registration.archived = true;
+		return this.toRegistration(registration);
+	}
+
+	// Registration challenges
+
+	public RegistrationChallenge getRegistrationChallenge(String id) throws IdxRestException {
+
+		this.simulate("registrationChallenges.get");
+		FakeChallenge challenge = id == null ? null : challenges.get(id);
+		return challenge == null ? null : this.toRegistrationChallenge(challenge);
+	}
+
+	public RegistrationChallenge createRegistrationChallenge(RegistrationChallenge aChallenge) throws IdxRestException {
+
+		this.simulate("registrationChallenges.create");
+		FakeRegistration registration = aChallenge.getRegistration() == null ? null : registrations.get(this.getId(aChallenge.getRegistration()));
+		if (registration == null || registration.archived) {
+			throw new IdxRestException("Unable to find an active registration for the registration challenge");
+		}
+		FakeUser user = users.get(registration.userId);
+		if (user == null || user.archived) {
+			throw new IdxRestException("The user of the registration has been archived");
+		}
+		String policyHref = aChallenge.getPolicy() == null ? null : aChallenge.getPolicy().getHref();
+		FakeChallenge challenge = new FakeChallenge(IdGenerator.newId(), registration.id, policyHref, requestExpiry);
+		challenges.put(challenge.id, challenge);
+		return this.toRegistrationChallenge(challenge);
+	}
+
+	/***
+	 * Complete the registration challenge with the registration response.  A response which
+	 * contains the challenge registers a new authenticator for the user of the registration.
+	 *
+	 * @param aChallenge
+	 * @return
+	 * @throws IdxRestException
+	 */
+	public RegistrationChallenge updateRegistrationChallenge(RegistrationChallenge aChallenge) throws IdxRestException {
+
+		this.simulate("registrationChallenges.update");
+		FakeChallenge challenge = challenges.get(this.getId(aChallenge));
+		if (challenge == null) {
+			throw new IdxRestException("Unable to find the registration challenge with HREF: " + aChallenge.getHref());
+		}
+		synchronized (challenge) {
+			if (challenge.response != null) {
+				throw new IdxRestException("The registration challenge has already been used");
+			}
+			if (challenge.isExpired()) {
+				throw new IdxRestException("The registration challenge has expired");
+			}
+			String response = aChallenge.getFidoRegistrationResponse();
+			if (response == null || response.isEmpty()) {
+				throw new IdxRestException("The registration response is required");
+			}
+			challenge.response = response;
+			if (!response.contains(challenge.challenge)) {
+				challenge.responseCode = REQUEST_INVALID;
+				challenge.responseMsg = "The registration response does not answer the challenge";
+			} else {
+				FakeAuthenticator authenticator = this.addAuthenticator(registrations.get(challenge.registrationId).userId);
+				challenge.responseCode = OK;
+				challenge.responseMsg = authenticator.id;
+			}
+		}
+		// The challenge is kept for a while as IdentityX does but is only of use until it expires
+		challenges.entrySet().removeIf(entry -> entry.getValue().isExpired());
+		return this.toRegistrationChallenge(challenge);
+	}
+
+	// Authenticators
+
+	public Authenticator[] listAuthenticators(String userAuthenticatorsHref) throws IdxRestException {
+
+		this.simulate("authenticators.list");
+		FakeUser user = users.get(this.getOwnerId(userAuthenticatorsHref, "/authenticators"));
+		List<Authenticator> found = new ArrayList<>();
+		if (user != null) {
+			for (String id : user.authenticatorIds) {
+				found.add(this.toAuthenticator(authenticators.get(id)));
+			}
+		}
+		return found.toArray(new Authenticator[0]);
+	}
+
+	public Authenticator getAuthenticator(String id) throws IdxRestException {
+
+		this.simulate("authenticators.get");
+		FakeAuthenticator authenticator = id == null ? null : authenticators.get(id);
+		return authenticator == null ? null : this.toAuthenticator(authenticator);
+	}
+
+	public Authenticator archiveAuthenticator(Authenticator anAuthenticator) throws IdxRestException {
+
+		this.simulate("authenticators.archive");
+		FakeAuthenticator authenticator = authenticators.get(this.getId(anAuthenticator));
+		if (authenticator == null) {
+			throw new IdxRestException("Unable to find the authenticator with HREF: " + anAuthenticator.getHref());
+		}
+		authenticator.status = AuthenticatorStatusEnum.ARCHIVED;
+		authenticator.updated = new Date();
+		return this.toAuthenticator(authenticator);
+	}
+
+	// Authentication requests
+
+	public AuthenticationRequest getAuthenticationRequest(String id) throws IdxRestException {
+
+		this.simulate("authenticationRequests.get");
+		FakeAuthRequest request = id == null ? null : authRequests.get(id);
+		return request == null ? null : this.toAuthenticationRequest(request);
+	}
+
+	public AuthenticationRequest createAuthenticationRequest(AuthenticationRequest aRequest) throws IdxRestException {
+
+		this.simulate("authenticationRequests.create");
+		String userId = aRequest.getUser() == null ? null : this.getActiveUser(aRequest.getUser()).id;
+		FakeAuthRequest request = new FakeAuthRequest(IdGenerator.newId(), userId, requestExpiry);
+		request.policyHref = aRequest.getPolicy() == null ? null : aRequest.getPolicy().getHref();
+		request.description = aRequest.getDescription();
+		request.authenticationRequestId = aRequest.getAuthenticationRequestId();
+		request.transactionContentType = aRequest.getSecureTransactionContentType();
+		request.transactionContent = aRequest.getSecureTransactionContent();
+		authRequests.put(request.id, request);
+		return this.toAuthenticationRequest(request);
+	}
+
+	/***
+	 * Validate the authentication response sent for the request.  The response must be the ID
+	 * of an active authenticator and the challenge of the request separated by a colon.
+	 *
+	 * @param aRequest
+	 * @return
+	 * @throws IdxRestException
+	 */
+	public AuthenticationRequest updateAuthenticationRequest(AuthenticationRequest aRequest) throws IdxRestException {
+
+		this.simulate("authenticationRequests.update");
+		FakeAuthRequest request = authRequests.get(this.getId(aRequest));
+		if (request == null) {
+			throw new IdxRestException("Unable to find the authentication request with HREF: " + aRequest.getHref());
+		}
+		synchronized (request) {
+			if (request.status != AuthenticationRequestStatusEnum.PENDING) {
+				throw new IdxRestException("The authentication request has already been completed");
+			}
+			request.response = aRequest.getFidoAuthenticationResponse();
+			if (request.isExpired()) {
+				request.status = AuthenticationRequestStatusEnum.EXPIRED;
+			} else {
+				this.verify(request);
+			}
+		}
+		authRequests.entrySet().removeIf(entry -> entry.getValue().isExpired());
+		return this.toAuthenticationRequest(request);
+	}
+
+	protected void verify(FakeAuthRequest request) {
+
+		String response = request.response;
+		int separator = response == null ? -1 : response.lastIndexOf(':');
+		if (separator < 0 || !request.challenge.equals(response.substring(separator + 1).trim())) {
+			request.fail(REQUEST_INVALID, "The authentication response does not answer the challenge");
+			return;
+		}
+		FakeAuthenticator authenticator = authenticators.get(response.substring(0, separator).trim());
+		FakeUser user = authenticator == null ? null : users.get(authenticator.userId);
+		if (authenticator == null || user == null || user.archived) {
+			request.fail(UNKNOWN_KEY_ID, "The authenticator is not known");
+			return;
+		}
+		if (authenticator.status != AuthenticatorStatusEnum.ACTIVE) {
+			request.fail(REVOKED_AUTHENTICATOR, "The authenticator has been revoked");
+			return;
+		}
+		if (request.userId != null && !request.userId.equals(authenticator.userId)) {
+			request.fail(UNAUTHORIZED, "The authenticator does not belong to the user of the request");
+			return;
+		}
+		authenticator.updated = new Date();
+		request.authenticatedUserId = authenticator.userId;
+		request.responseCode = OK;
+		request.status = AuthenticationRequestStatusEnum.COMPLETED_SUCCESSFUL;
+	}
+
+	/***
+	 * Wait for the simulated latency and then fail the operation if an error is injected
+	 *
+	 * @param operation the resource and the method, e.g. authenticationRequests.update
+	 * @throws IdxRestException
+	 */
+	protected void simulate(String operation) throws IdxRestException {
+
+		long delay = this.nextLatency();
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IdxRestException("Interrupted while simulating the latency of: " + operation);
+			}
+		}
+		if (errorRate > 0 && (failingOperations.isEmpty() || failingOperations.contains(operation))
+				&& ThreadLocalRandom.current().nextDouble(100) < errorRate) {
+			logger.debug("Injecting a failure into the operation: {}", operation);
+			throw new IdxRestException("Injected failure of: " + operation);
+		}
+	}
+
+	/***
+	 * The latency of the next operation drawn from the distribution
+	 *
+	 * @return
+	 */
+	protected long nextLatency() {
+
+		if (latency <= 0) {
+			return 0;
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		double delay;
+		switch (latencyDistribution) {
+		case FIXED:
+			delay = latency;
+			break;
+		case UNIFORM:
+			delay = random.nextDouble(2 * latency);
+			break;
+		case EXPONENTIAL:
+		default:
+			delay = -latency * Math.log(1 - random.nextDouble());
+			break;
+		}
+		return Math.min(latencyMax, Math.round(delay));
+	}
+
+	/***
+	 * Get the ID of the resource, from its HREF if the ID is not set
+	 *
+	 * @param resource
+	 * @return
+	 */
+	public String getId(Resource resource) {
+
+		if (resource == null) {
+			return null;
+		}
+		if (resource.getId() != null) {
+			return resource.getId();
+		}
+		return this.getIdFromHref(resource.getHref());
+	}
+
+	public String getIdFromHref(String href) {
+		return href == null ? null : href.substring(href.lastIndexOf('/') + 1);
+	}
+
+	/***
+	 * Get the ID of the resource which owns the collection, e.g. the user of .../users/{id}/authenticators
+	 *
+	 * @param collectionHref
+	 * @param collection
+	 * @return
+	 */
+	protected String getOwnerId(String collectionHref, String collection) {
+
+		if (collectionHref == null || !collectionHref.endsWith(collection)) {
+			return null;
+		}
+		return this.getIdFromHref(collectionHref.substring(0, collectionHref.length() - collection.length()));
+	}
+
+	protected FakeUser getActiveUser(User aUser) throws IdxRestException {
+
+		FakeUser user = aUser == null ? null : users.get(this.getId(aUser));
+		if (user == null || user.archived) {
+			throw new IdxRestException("Unable to find an active user with HREF: " + (aUser == null ? null : aUser.getHref()));
+		}
+		return user;
+	}
+
+	protected FakeAuthenticator addAuthenticator(String userId) {
+
+		FakeAuthenticator authenticator = new FakeAuthenticator(IdGenerator.newId(), userId);
+		authenticators.put(authenticator.id, authenticator);
+		users.get(userId).authenticatorIds.add(authenticator.id);
+		return authenticator;
+	}
+
+	protected void addPolicy(String policyId, String type) {
+
+		Policy policy = new Policy(application.getPolicies().getHref() + "/" + policyId);
+		policy.setId(policyId);
+		policy.setPolicyId(policyId);
+		policy.setType(type);
+		policy.setCreated(new Date());
+		Map<String, Object> aaid = Collections.<String, Object>singletonMap("aaid", Collections.singletonList(authenticatorType.getAaid()));
+		policy.setFidoPolicy(Collections.singletonMap("accepted",
+				Collections.singletonList(Collections.singletonList(aaid))));
+		policies.put(policyId, policy);
+	}
+
+	protected FIDOFacets createFacets() {
+
+		Map<String, Object> version = new LinkedHashMap<>();
+		version.put("major", 1);
+		version.put("minor", 0);
+		Map<String, Object> trustedFacet = new LinkedHashMap<>();
+		trustedFacet.put("version", version);
+		trustedFacet.put("ids", Arrays.asList(facetIds));
+		FIDOFacets facets = new FIDOFacets(application.getHref() + "/fidoFacets");
+		facets.setTrustedFacets(Collections.<Object>singletonList(trustedFacet));
+		return facets;
+	}
+
+	/***
+	 * A message shaped like a UAF request with the operation and the challenge
+	 *
+	 * @param operation
+	 * @param challenge
+	 * @return
+	 */
+	protected String createFidoRequest(String operation, String challenge) {
+		return "[{\"header\":{\"upv\":{\"major\":1,\"minor\":0},\"op\":\"" + operation + "\",\"appID\":\"" + facetIds[0]
+				+ "\"},\"challenge\":\"" + challenge + "\"}]";
+	}
+
+	// Each read returns a new object, as the SDK does, so the caller can change it freely
+
+	protected String getUserHref(String id) {
+		return BASE_URL + "/users/" + id;
+	}
+
+	protected User toUser(FakeUser fakeUser) {
+
+		User user = new User(this.getUserHref(fakeUser.id));
+		user.setId(fakeUser.id);
+		user.setUserId(fakeUser.userId);
+		user.setCreated(fakeUser.created);
+		user.setAuthenticators(new Link(user.getHref() + "/authenticators"));
+		user.setRegistrations(new Link(user.getHref() + "/registrations"));
+		return user;
+	}
+
+	protected Registration toRegistration(FakeRegistration fakeRegistration) {
+
+		Registration registration = new Registration(BASE_URL + "/registrations/" + fakeRegistration.id);
+		registration.setId(fakeRegistration.id);
+		registration.setRegistrationId(fakeRegistration.registrationId);
+		registration.setCreated(fakeRegistration.created);
+		registration.setUser(new User(this.getUserHref(fakeRegistration.userId)));
+		registration.setApplication(new Application(application.getHref()));
+		return registration;
+	}
+
+	protected RegistrationChallenge toRegistrationChallenge(FakeChallenge challenge) {
+
+		RegistrationChallenge regChallenge = new RegistrationChallenge(BASE_URL + "/registrationChallenges/" + challenge.id);
+		regChallenge.setId(challenge.id);
+		regChallenge.setCreated(challenge.created);
+		regChallenge.setExpiration(challenge.expiration);
+		regChallenge.setRegistration(new Registration(BASE_URL + "/registrations/" + challenge.registrationId));
+		regChallenge.setPolicy(challenge.policyHref == null ? null : new Policy(challenge.policyHref));
+		regChallenge.setFidoRegistrationRequest(this.createFidoRequest("Reg", challenge.challenge));
+		regChallenge.setFidoRegistrationResponse(challenge.response);
+		regChallenge.setFidoResponseCode(challenge.responseCode);
+		regChallenge.setFidoResponseMsg(challenge.responseMsg);
+		return regChallenge;
+	}
+
+	protected Authenticator toAuthenticator(FakeAuthenticator fakeAuthenticator) {
+
+		// As in a list from IdentityX the type is only a link
+		Authenticator authenticator = new Authenticator(BASE_URL + "/authenticators/" + fakeAuthenticator.id);
+		authenticator.setId(fakeAuthenticator.id);
+		authenticator.setCreated(fakeAuthenticator.created);
+		authenticator.setUpdated(fakeAuthenticator.updated);
+		authenticator.setUser(new User(this.getUserHref(fakeAuthenticator.userId)));
+		authenticator.setAuthenticatorType(new AuthenticatorType(authenticatorType.getHref()));
+		authenticator.setType(FIDO_AUTHENTICATOR_TYPE);
+		authenticator.setStatus(fakeAuthenticator.status);
+		authenticator.setFidoDeregistrationRequest(this.createFidoRequest("Dereg", fakeAuthenticator.id));
+		return authenticator;
+	}
+
+	protected AuthenticationRequest toAuthenticationRequest(FakeAuthRequest fakeRequest) {
+
+		AuthenticationRequest request = new AuthenticationRequest(BASE_URL + "/authenticationRequests/" + fakeRequest.id);
+		request.setId(fakeRequest.id);
+		request.setCreated(fakeRequest.created);
+		request.setExpiration(fakeRequest.expiration);
+		request.setApplication(new Application(application.getHref()));
+		request.setPolicy(fakeRequest.policyHref == null ? null : new Policy(fakeRequest.policyHref));
+		request.setType(FIDO_AUTHENTICATION_TYPE);
+		request.setDescription(fakeRequest.description);
+		request.setAuthenticationRequestId(fakeRequest.authenticationRequestId);
+		request.setSecureTransactionContentType(fakeRequest.transactionContentType);
+		request.setSecureTransactionContent(fakeRequest.transactionContent);
+		request.setStatus(fakeRequest.status);
+		request.setFidoAuthenticationRequest(this.createFidoRequest("Auth", fakeRequest.challenge));
+		request.setFidoAuthenticationResponse(fakeRequest.response);
+		request.setFidoResponseCode(fakeRequest.responseCode);
+		request.setFidoResponseMsg(fakeRequest.responseMsg);
+		String userId = fakeRequest.authenticatedUserId != null ? fakeRequest.authenticatedUserId : fakeRequest.userId;
+		// As in IdentityX the user is only a link
+		request.setUser(userId == null ? null : new User(this.getUserHref(userId)));
+		return request;
+	}
+
+	protected static class FakeUser {
+
+		private final String id;
+		private final String userId;
+		private final Date created = new Date();
+		private final Set<String> registrationIds = ConcurrentHashMap.newKeySet();
+		private final Set<String> authenticatorIds = ConcurrentHashMap.newKeySet();
+		private volatile boolean archived;
+
+		FakeUser(String id, String userId) {
+			this.id = id;
+			this.userId = userId;
+		}
+	}
+
+	protected static class FakeRegistration {
+
+		private final String id;
+		private final String registrationId;
+		private final String userId;
+		private final Date created = new Date();
+		private volatile boolean archived;
+
+		FakeRegistration(String id, String registrationId, String userId) {
+			this.id = id;
+			this.registrationId = registrationId;
+			this.userId = userId;
+		}
+	}
+
+	protected static class FakeChallenge {
+
+		private final String id;
+		private final String registrationId;
+		private final String policyHref;
+		private final String challenge = IdGenerator.newId();
+		private final Date created = new Date();
+		private final Date expiration;
+		private String response;
+		private Long responseCode;
+		private String responseMsg;
+
+		FakeChallenge(String id, String registrationId, String policyHref, long expiry) {
+			this.id = id;
+			this.registrationId = registrationId;
+			this.policyHref = policyHref;
+			this.expiration = new Date(created.getTime() + expiry);
+		}
+
+		boolean isExpired() {
+			return expiration.getTime() < System.currentTimeMillis();
+		}
+	}
+
+	protected static class FakeAuthenticator {
+
+		private final String id;
+		private final String userId;
+		private final Date created = new Date();
+		private volatile Date updated = created;
+		private volatile AuthenticatorStatusEnum status = AuthenticatorStatusEnum.ACTIVE;
+
+		FakeAuthenticator(String id, String userId) {
+			this.id = id;
+			this.userId = userId;
+		}
+	}
+
+	protected static class FakeAuthRequest {
+
+		private final String id;
+		private final String userId;
+		private final String challenge = IdGenerator.newId();
+		private final Date created = new Date();
+		private final Date expiration;
+		private String policyHref;
+		private String description;
+		private String authenticationRequestId;
+		private String transactionContentType;
+		private String transactionContent;
+		private volatile AuthenticationRequestStatusEnum status = AuthenticationRequestStatusEnum.PENDING;
+		private String response;
+		private Long responseCode;
+		private String responseMsg;
+		private String authenticatedUserId;
+
+		FakeAuthRequest(String id, String userId, long expiry) {
+			this.id = id;
+			this.userId = userId;
+			this.expiration = new Date(created.getTime() + expiry);
+		}
+
+		boolean isExpired() {
+			return expiration.getTime() < System.currentTimeMillis();
+		}
+
+		void fail(long code, String msg) {
+			this.responseCode = code;
+			this.responseMsg = msg;
+			this.status = AuthenticationRequestStatusEnum.COMPLETED_FAILURE;
+		}
+	}
+}
@@ -0,0 +1,518 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido.fake;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.daon.identityx.rest.model.pojo.Application;
+import com.daon.identityx.rest.model.pojo.AuthenticationRequest;
+import com.daon.identityx.rest.model.pojo.Authenticator;
+import com.daon.identityx.rest.model.pojo.AuthenticatorType;
+import com.daon.identityx.rest.model.pojo.Policy;
+import com.daon.identityx.rest.model.pojo.Registration;
+import com.daon.identityx.rest.model.pojo.RegistrationChallenge;
+import com.daon.identityx.rest.model.pojo.User;
+import com.identityx.clientSDK.TenantRepoFactory;
+import com.identityx.clientSDK.collections.ApplicationCollection;
+import com.identityx.clientSDK.collections.AuthenticatorCollection;
+import com.identityx.clientSDK.collections.PolicyCollection;
+import com.identityx.clientSDK.collections.RegistrationCollection;
+import com.identityx.clientSDK.collections.UserCollection;
+import com.identityx.clientSDK.exceptions.IdxRestException;
+import com.identityx.clientSDK.queryHolders.ApplicationQueryHolder;
+import com.identityx.clientSDK.queryHolders.AuthenticatorQueryHolder;
+import com.identityx.clientSDK.queryHolders.PolicyQueryHolder;
+import com.identityx.clientSDK.queryHolders.RegistrationQueryHolder;
+import com.identityx.clientSDK.queryHolders.UserQueryHolder;
+import com.identityx.clientSDK.repositories.ApplicationRepository;
+import com.identityx.clientSDK.repositories.AuthenticationRequestRepository;
+import com.identityx.clientSDK.repositories.AuthenticatorRepository;
+import com.identityx.clientSDK.repositories.AuthenticatorTypeRepository;
+import com.identityx.clientSDK.repositories.PolicyRepository;
+import com.identityx.clientSDK.repositories.RegistrationChallengeRepository;
+import com.identityx.clientSDK.repositories.RegistrationRepository;
+import com.identityx.clientSDK.repositories.UserRepository;
+
+/***
+ * The TenantRepoFactory used by the IdentityXServices when the "fake-identityx" profile is
+ * active.  Its repositories are kept in memory by the FakeIdentityXTenant rather than calling
+ * IdentityX, so no keystore, credentials or network are needed.
+ *
+ * Only the operations used by the IdentityXServices are supported, the others fail with an
+ * IdxRestException.  The search criteria are read from the query holders by property name and a
+ * criterion which cannot be read is ignored.
+ *
+ * @author Daon
+ *
+ */
+@Component
+@Profile(FakeIdentityXTenant.PROFILE)
+public class FakeTenantRepoFactory extends TenantRepoFactory {
+
+	@Autowired
+	private FakeIdentityXTenant tenant;
+
+	private ApplicationRepository applicationRepo;
+	private AuthenticationRequestRepository authenticationRequestRepo;
+	private AuthenticatorRepository authenticatorRepo;
+	private AuthenticatorTypeRepository authenticatorTypeRepo;
+	private PolicyRepository policyRepo;
+	private RegistrationChallengeRepository registrationChallengeRepo;
+	private RegistrationRepository registrationRepo;
+	private UserRepository userRepo;
+
+	public FakeTenantRepoFactory() {
+		// There is no connection to IdentityX
+		super(null);
+	}
+
+	@PostConstruct
+	public void initialise() {
+
+		applicationRepo = new FakeApplicationRepository();
+		authenticationRequestRepo = new FakeAuthenticationRequestRepository();
+		authenticatorRepo = new FakeAuthenticatorRepository();
+		authenticatorTypeRepo = new FakeAuthenticatorTypeRepository();
+		policyRepo = new FakePolicyRepository();
+		registrationChallengeRepo = new FakeRegistrationChallengeRepository();
+		registrationRepo = new FakeRegistrationRepository();
+		userRepo = new FakeUserRepository();
+	}
+
+	@Override
+	public ApplicationRepository getApplicationRepo() {
+		return applicationRepo;
+	}
+
+	@Override
+	public AuthenticationRequestRepository getAuthenticationRequestRepo() {
+		return authenticationRequestRepo;
+	}
+
+	@Override
+	public AuthenticatorRepository getAuthenticatorRepo() {
+		return authenticatorRepo;
+	}
+
+	@Override
+	public AuthenticatorTypeRepository getAuthenticatorTypeRepo() {
+		return authenticatorTypeRepo;
+	}
+
+	@Override
+	public PolicyRepository getPolicyRepo() {
+		return policyRepo;
+	}
+
+	@Override
+	public RegistrationChallengeRepository getRegistrationChallengeRepo() {
+		return registrationChallengeRepo;
+	}
+
+	@Override
+	public RegistrationRepository getRegistrationRepo() {
+		return registrationRepo;
+	}
+
+	@Override
+	public UserRepository getUserRepo() {
+		return userRepo;
+	}
+
+	public FakeIdentityXTenant getTenant() {
+		return tenant;
+	}
+
+	public void setTenant(FakeIdentityXTenant tenant) {
+		this.tenant = tenant;
+	}
+
+	/***
+	 * Read a search criterion from the search spec of a query holder
+	 *
+	 * @param searchSpec
+	 * @param property
+	 * @return the criterion or null if it is not set or cannot be read
+	 */
+	protected static String getCriterion(Object searchSpec, String property) {
+
+		if (searchSpec == null) {
+			return null;
+		}
+		BeanWrapper wrapper = new BeanWrapperImpl(searchSpec);
+		if (!wrapper.isReadableProperty(property)) {
+			return null;
+		}
+		Object value = wrapper.getPropertyValue(property);
+		return value == null ? null : value.toString();
+	}
+
+	protected static IdxRestException unsupported(String operation) {
+		return new IdxRestException("The operation: " + operation + " is not supported by the fake IdentityX");
+	}
+
+	protected class FakeApplicationRepository extends ApplicationRepository {
+
+		@Override
+		public String getBaseUrl() {
+			return FakeIdentityXTenant.BASE_URL;
+		}
+
+		@Override
+		public String getResourcePath() {
+			return "/applications";
+		}
+
+		@Override
+		public Application get(String href) throws IdxRestException {
+			return tenant.getApplication(tenant.getIdFromHref(href));
+		}
+
+		@Override
+		public Application getById(String id) throws IdxRestException {
+			return tenant.getApplication(id);
+		}
+
+		@Override
+		public Application create(Application application) throws IdxRestException {
+			throw unsupported("applications.create");
+		}
+
+		@Override
+		public Application update(Application application) throws IdxRestException {
+			throw unsupported("applications.update");
+		}
+
+		@Override
+		public Application archive(Application application) throws IdxRestException {
+			throw unsupported("applications.archive");
+		}
+
+		@Override
+		public ApplicationCollection list(ApplicationQueryHolder holder) throws IdxRestException {
+
+			ApplicationCollection collection = new ApplicationCollection();
+			collection.setItems(tenant.listApplications(getCriterion(holder.getSearchSpec(), "applicationId")));
+			return collection;
+		}
+	}
+
+	protected class FakePolicyRepository extends PolicyRepository {
+
+		@Override
+		public String getBaseUrl() {
+			return FakeIdentityXTenant.BASE_URL;
+		}
+
+		@Override
+		public String getResourcePath() {
+			return "/policies";
+		}
+
+		@Override
+		public Policy get(String href) throws IdxRestException {
+			return tenant.getPolicy(tenant.getIdFromHref(href));
+		}
+
+		@Override
+		public Policy getById(String id) throws IdxRestException {
+			return tenant.getPolicy(id);
+		}
+
+		@Override
+		public Policy create(Policy policy) throws IdxRestException {
+			throw unsupported("policies.create");
+		}
+
+		@Override
+		public Policy update(Policy policy) throws IdxRestException {
+			throw unsupported("policies.update");
+		}
+
+		@Override
+		public Policy archive(Policy policy) throws IdxRestException {
+			throw unsupported("policies.archive");
+		}
+
+		@Override
+		public PolicyCollection list(String href, PolicyQueryHolder holder) throws IdxRestException {
+
+			PolicyCollection collection = new PolicyCollection();
+			collection.setItems(tenant.listPolicies(href, getCriterion(holder.getSearchSpec(), "policyId")));
+			return collection;
+		}
+	}
+
+	protected class FakeAuthenticatorTypeRepository extends AuthenticatorTypeRepository {
+
+		@Override
+		public String getBaseUrl() {
+			return FakeIdentityXTenant.BASE_URL;
+		}
+
+		@Override
+		public String getResourcePath() {
+			return "/authenticatorTypes";
+		}
+
+		@Override
+		public AuthenticatorType get(String href) throws IdxRestException {
+			return tenant.getAuthenticatorType(tenant.getIdFromHref(href));
+		}
+
+		@Override
+		public AuthenticatorType getById(String id) throws IdxRestException {
+			return tenant.getAuthenticatorType(id);
+		}
+
+		@Override
+		public AuthenticatorType create(AuthenticatorType authenticatorType) throws IdxRestException {
+			throw unsupported("authenticatorTypes.create");
+		}
+
+		@Override
+		public AuthenticatorType update(AuthenticatorType authenticatorType) throws IdxRestException {
+			throw unsupported("authenticatorTypes.update");
+		}
+
+		@Override
+		public AuthenticatorType archive(AuthenticatorType authenticatorType) throws IdxRestException {
+			throw unsupported("authenticatorTypes.archive");
+		}
+	}
+
+	protected class FakeUserRepository extends UserRepository {
+
+		@Override
+		public String getBaseUrl() {
+			return FakeIdentityXTenant.BASE_URL;
+		}
+
+		@Override
+		public String getResourcePath() {
+			return "/users";
+		}
+
+		@Override
+		public User get(String href) throws IdxRestException {
+			return tenant.getUser(tenant.getIdFromHref(href));
+		}
+
+		@Override
+		public User getById(String id) throws IdxRestException {
+			return tenant.getUser(id);
+		}
+
+		@Override
+		public User create(User user) throws IdxRestException {
+			return tenant.createUser(user);
+		}
+
+		@Override
+		public User update(User user) throws IdxRestException {
+			throw unsupported("users.update");
+		}
+
+		@Override
+		public User archive(User user) throws IdxRestException {
+			return tenant.archiveUser(user);
+		}
+
+		@Override
+		public UserCollection list(UserQueryHolder holder) throws IdxRestException {
+
+			UserCollection collection = new UserCollection();
+			collection.setItems(tenant.listUsers(getCriterion(holder.getSearchSpec(), "userId")));
+			return collection;
+		}
+	}
+
+	protected class FakeRegistrationRepository extends RegistrationRepository {
+
+		@Override
+		public String getBaseUrl() {
+			return FakeIdentityXTenant.BASE_URL;
+		}
+
+		@Override
+		public String getResourcePath() {
+			return "/registrations";
+		}
+
+		@Override
+		public Registration get(String href) throws IdxRestException {
+			return tenant.getRegistration(tenant.getIdFromHref(href));
+		}
+
+		@Override
+		public Registration getById(String id) throws IdxRestException {
+			return tenant.getRegistration(id);
+		}
+
+		@Override
+		public Registration create(Registration registration) throws IdxRestException {
+			return tenant.createRegistration(registration);
+		}
+
+		@Override
+		public Registration update(Registration registration) throws IdxRestException {
+			throw unsupported("registrations.update");
+		}
+
+		@Override
+		public Registration archive(Registration registration) throws IdxRestException {
+			return tenant.archiveRegistration(registration);
+		}
+
+		@Override
+		public RegistrationCollection list(String href, RegistrationQueryHolder holder) throws IdxRestException {
+
+			RegistrationCollection collection = new RegistrationCollection();
+			collection.setItems(tenant.listRegistrations(href, getCriterion(holder.getSearchSpec(), "registrationId")));
+			return collection;
+		}
+	}
+
+	protected class FakeRegistrationChallengeRepository extends RegistrationChallengeRepository {
+
+		@Override
+		public String getBaseUrl() {
+			return FakeIdentityXTenant.BASE_URL;
+		}
+
+		@Override
+		public String getResourcePath() {
+			return "/registrationChallenges";
+		}
+
+		@Override
+		public RegistrationChallenge get(String href) throws IdxRestException {
+			return tenant.getRegistrationChallenge(tenant.getIdFromHref(href));
+		}
+
+		@Override
+		public RegistrationChallenge getById(String id) throws IdxRestException {
+			return tenant.getRegistrationChallenge(id);
+		}
+
+		@Override
+		public RegistrationChallenge create(RegistrationChallenge regChallenge) throws IdxRestException {
+			return tenant.createRegistrationChallenge(regChallenge);
+		}
+
+		@Override
+		public RegistrationChallenge update(RegistrationChallenge regChallenge) throws IdxRestException {
+			return tenant.updateRegistrationChallenge(regChallenge);
+		}
+
+		@Override
+		public RegistrationChallenge archive(RegistrationChallenge regChallenge) throws IdxRestException {
+			throw unsupported("registrationChallenges.archive");
+		}
+	}
+
+	protected class FakeAuthenticationRequestRepository extends AuthenticationRequestRepository {
+
+		@Override
+		public String getBaseUrl() {
+			return FakeIdentityXTenant.BASE_URL;
+		}
+
+		@Override
+		public String getResourcePath() {
+			return "/authenticationRequests";
+		}
+
+		@Override
+		public AuthenticationRequest get(String href) throws IdxRestException {
+			return tenant.getAuthenticationRequest(tenant.getIdFromHref(href));
+		}
+
+		@Override
+		public AuthenticationRequest getById(String id) throws IdxRestException {
+			return tenant.getAuthenticationRequest(id);
+		}
+
+		@Override
+		public AuthenticationRequest create(AuthenticationRequest request) throws IdxRestException {
+			return tenant.createAuthenticationRequest(request);
+		}
+
+		@Override
+		public AuthenticationRequest update(AuthenticationRequest request) throws IdxRestException {
+			return tenant.updateAuthenticationRequest(request);
+		}
+
+		@Override
+		public AuthenticationRequest archive(AuthenticationRequest request) throws IdxRestException {
+			throw unsupported("authenticationRequests.archive");
+		}
+	}
+
+	protected class FakeAuthenticatorRepository extends AuthenticatorRepository {
+
+		@Override
+		public String getBaseUrl() {
+			return FakeIdentityXTenant.BASE_URL;
+		}
+
+		@Override
+		public String getResourcePath() {
+			return "/authenticators";
+		}
+
+		@Override
+		public Authenticator get(String href) throws IdxRestException {
+			return tenant.getAuthenticator(tenant.getIdFromHref(href));
+		}
+
+		@Override
+		public Authenticator getById(String id) throws IdxRestException {
+			return tenant.getAuthenticator(id);
+		}
+
+		@Override
+		public Authenticator create(Authenticator authenticator) throws IdxRestException {
+			throw unsupported("authenticators.create");
+		}
+
+		@Override
+		public Authenticator update(Authenticator authenticator) throws IdxRestException {
+			throw unsupported("authenticators.update");
+		}
+
+		@Override
+		public Authenticator archive(Authenticator authenticator) throws IdxRestException {
+			return tenant.archiveAuthenticator(authenticator);
+		}
+
+		@Override
+		public AuthenticatorCollection list(String href, AuthenticatorQueryHolder holder) throws IdxRestException {
+
+			AuthenticatorCollection collection = new AuthenticatorCollection();
+			collection.setItems(tenant.listAuthenticators(href));
+			return collection;
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.daon.identityx.password;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.entity.PasswordHashAlgorithm;
+
+/***
+ * Computes the password hashes for each PasswordHashAlgorithm.
+ *
+ * The legacy iterated SHA-256 hash is SHA-256(salt + password) hashed again for the given
+ * number of iterations.  Each thread keeps its own MessageDigest and a 32 byte buffer.  Every
+ * iteration digests the buffer back into itself so hashing a password allocates only the
+ * password bytes and the returned copy, rather than a new array per iteration.
+ *
+ * The PBKDF2 hash is PBKDF2 with HMAC-SHA256, the iterations being its cost, producing a
+ * 32 byte key.  The key is a single HMAC-SHA256 block so it is computed here with a per-thread
+ * Mac, giving the same result as the PBKDF2WithHmacSHA256 SecretKeyFactory.
+ *
+ * Both hashes check every 1024 iterations whether their thread has been interrupted and if so
+ * stop with an exception, so a hash cancelled by the PasswordHashingExecutor frees its thread.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class PasswordHashEngine {
+
+	private static final Logger logger = LoggerFactory.getLogger(PasswordHashEngine.class);
+
+	private static final String ALGORITHM = "SHA-256";
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+	private static final int HASH_LENGTH = 32;
+	private static final byte[] FIRST_BLOCK = { 0, 0, 0, 1 };
+	private static final int INTERRUPT_CHECK_MASK = 1023;
+
+	private final ThreadLocal<HashState> state = new ThreadLocal<HashState>() {
+		@Override
+		protected HashState initialValue() {
+			try {
+				return new HashState(MessageDigest.getInstance(ALGORITHM));
+			} catch (NoSuchAlgorithmException e) {
+				logger.error("The " + ALGORITHM + " algorithm is not available", e);
+				throw new RuntimeException(e);
+			}
+		}
+	};
+
+	public PasswordHashEngine() {
+	}
+
+	/***
+	 * Hash the password with the algorithm, the salt and for the given number of iterations
+	 *
+	 * @param algorithm
+	 * @param password
+	 * @param iterationCount
+	 * @param salt
+	 * @return
+	 */
+	public byte[] hash(PasswordHashAlgorithm algorithm, String password, int iterationCount, byte[] salt) {
+
+		switch (algorithm) {
+		case PBKDF2_SHA256:
+			return this.hashPbkdf2(password, iterationCount, salt);
+		case SHA256_ITERATED:
+		default:
+			return this.hashIteratedSha256(password, iterationCount, salt);
+		}
+	}
+
+	/***
+	 * Hash the password with the salt using SHA-256 and for the given number of iterations
+	 *
+	 * @param password
+	 * @param iterationCount
+	 * @param salt
+	 * @return
+	 */
+	public byte[] hashIteratedSha256(String password, int iterationCount, byte[] salt) {
+
+		HashState hashState = state.get();
+		MessageDigest digest = hashState.digest;
+		byte[] buffer = hashState.buffer;
+		try {
+			digest.reset();
+			digest.update(salt);
+			digest.update(password.getBytes(StandardCharsets.UTF_8));
+			digest.digest(buffer, 0, HASH_LENGTH);
+			for (int i = 0; i < iterationCount; i++) {
+				if ((i & INTERRUPT_CHECK_MASK) == 0) {
+					this.checkInterrupted();
+				}
+				digest.update(buffer, 0, HASH_LENGTH);
+				digest.digest(buffer, 0, HASH_LENGTH);
+			}
+			return buffer.clone();
+		} catch (DigestException e) {
+			digest.reset();
+			logger.error("An exception occurred while attempting to hash the password", e);
+			throw new RuntimeException(e);
+		}
+	}
+
+	/***
+	 * Hash the password with the salt using PBKDF2 with HMAC-SHA256
+	 *
+	 * @param password
+	 * @param iterationCount
+	 * @param salt
+	 * @return
+	 */
+	public byte[] hashPbkdf2(String password, int iterationCount, byte[] salt) {
+
+		HashState hashState = state.get();
+		byte[] block = hashState.buffer;
+		byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+		try {
+			Mac mac = hashState.getMac();
+			mac.init(new PasswordKey(passwordBytes));
+			mac.update(salt);
+			mac.update(FIRST_BLOCK);
+			mac.doFinal(block, 0);
+			byte[] hash = block.clone();
+			for (int i = 1; i < iterationCount; i++) {
+				if ((i & INTERRUPT_CHECK_MASK) == 0) {
+					this.checkInterrupted();
+				}
+				mac.update(block, 0, HASH_LENGTH);
+				mac.doFinal(block, 0);
+				for (int j = 0; j < HASH_LENGTH; j++) {
+					hash[j] ^= block[j];
+				}
+			}
+			return hash;
+		} catch (GeneralSecurityException e) {
+			logger.error("An exception occurred while attempting to hash the password", e);
+			throw new RuntimeException(e);
+		} finally {
+			Arrays.fill(passwordBytes, (byte) 0);
+		}
+	}
+
+	/***
+	 * Stop the hash if its thread has been interrupted, e.g. because it was cancelled
+	 */
+	protected void checkInterrupted() {
+
+		if (Thread.currentThread().isInterrupted()) {
+			throw new RuntimeException("The password hash was interrupted");
+		}
+	}
+
+	private static class HashState {
+
+		private final MessageDigest digest;
+		private final byte[] buffer = new byte[HASH_LENGTH];
+
+		private Mac mac;
+
+		HashState(MessageDigest digest) {
+			this.digest = digest;
+		}
+
+		Mac getMac() throws NoSuchAlgorithmException {
+			if (mac == null) {
+				mac = Mac.getInstance(HMAC_ALGORITHM);
+			}
+			return mac;
+		}
+	}
+
+	/***
+	 * The password as the HMAC key
+	 */
+	private static class PasswordKey implements SecretKey {
+
+		private static final long serialVersionUID = 1L;
+
+		private final byte[] encoded;
+
+		PasswordKey(byte[] encoded) {
+			this.encoded = encoded;
+		}
+
+		@Override
+		public String getAlgorithm() {
+			return HMAC_ALGORITHM;
+		}
+
+		@Override
+		public String getFormat() {
+			return "RAW";
+		}
+
+		@Override
+		public byte[] getEncoded() {
+			return encoded.clone();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.daon.identityx.password;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.entity.AccountCredential;
+import com.daon.identityx.entity.PasswordHashAlgorithm;
+
+/***
+ * Decides which algorithm and cost new password hashes are created with.
+ *
+ * If no cost is configured the cost is calibrated at start up: the hash is timed on this
+ * hardware and the cost scaled so that one hash takes about the target time.  The cost is
+ * rounded to a multiple of the cost step and never drops below the minimum cost.
+ *
+ * An account whose hash uses another algorithm or a lower cost is rehashed the next time
+ * its password is validated, so the stored hashes move to the current settings as users
+ * log in without a bulk migration.  The timing varies between restarts so a calibrated cost
+ * only causes a rehash when the hash's cost is below it by more than the rehash margin,
+ * otherwise each restart which calibrated a slightly higher cost would rehash every account.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class PasswordHashPolicy {
+
+	private static final Logger logger = LoggerFactory.getLogger(PasswordHashPolicy.class);
+
+	private static final int CALIBRATION_COST = 10000;
+	private static final int CALIBRATION_ROUNDS = 5;
+	private static final int COST_STEP = 10000;
+	private static final byte[] CALIBRATION_SALT = new byte[32];
+
+	@Autowired
+	private PasswordHashEngine passwordHashEngine;
+
+	@Value("${fido.password.algorithm:PBKDF2_SHA256}")
+	private PasswordHashAlgorithm algorithm;
+	@Value("${fido.password.cost:0}")
+	private int configuredCost;
+	@Value("${fido.password.min_cost:10000}")
+	private int minCost;
+	@Value("${fido.password.target_ms:50}")
+	private long targetMillis;
+	@Value("${fido.password.rehash_margin:0.2}")
+	private double rehashMargin;
+
+	private int cost;
+	private int rehashBelow;
+
+	public PasswordHashPolicy() {
+	}
+
+	@PostConstruct
+	public void initialise() {
+
+		if (configuredCost > 0) {
+			cost = configuredCost;
+			rehashBelow = cost;
+		} else {
+			cost = Math.max(minCost, this.round(this.calibrate(algorithm, targetMillis)));
+			rehashBelow = (int) (cost * (1 - rehashMargin));
+		}
+		logger.info("New password hashes will use the algorithm: {} with a cost of: {}, hashes with a cost below: {} are rehashed",
+				algorithm, cost, rehashBelow);
+	}
+
+	/***
+	 * Find the cost at which one hash with the algorithm takes about the target time
+	 *
+	 * @param anAlgorithm
+	 * @param target
+	 * @return
+	 */
+	public int calibrate(PasswordHashAlgorithm anAlgorithm, long target) {
+
+		// The first rounds warm up the JIT - only the fastest round is used
+		long fastest = Long.MAX_VALUE;
+		for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+			long start = System.nanoTime();
+			passwordHashEngine.hash(anAlgorithm, "calibration", CALIBRATION_COST, CALIBRATION_SALT);
+			fastest = Math.min(fastest, System.nanoTime() - start);
+		}
+		long targetNanos = target * 1000000L;
+		long calibrated = CALIBRATION_COST * targetNanos / Math.max(1, fastest);
+		logger.debug("Calibrated the algorithm: {} - {} iterations took {}ns, cost for {}ms is {}", anAlgorithm,
+				CALIBRATION_COST, fastest, target, calibrated);
+		return (int) Math.min(Integer.MAX_VALUE, calibrated);
+	}
+
+	/***
+	 * Round the cost to the nearest multiple of the cost step
+	 *
+	 * @param aCost
+	 * @return
+	 */
+	protected int round(int aCost) {
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(1, Math.round((double) aCost / COST_STEP)) * COST_STEP);
+	}
+
+	/***
+	 * Whether the password hash should be replaced with one using the current settings
+	 *
+	 * @param credential
+	 * @return
+	 */
+	public boolean needsRehash(AccountCredential credential) {
+		return credential.getHashAlgorithm() != algorithm || credential.getIterations() < rehashBelow;
+	}
+
+	public PasswordHashAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	public int getCost() {
+		return cost;
+	}
+
+	public int getRehashBelow() {
+		return rehashBelow;
+	}
+}
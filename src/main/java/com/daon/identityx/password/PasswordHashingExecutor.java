@@ -0,0 +1,143 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.daon.identityx.password;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.controller.model.Error;
+import com.daon.identityx.exception.ServerBusyException;
+
+/***
+ * Runs the password hashing on a small, dedicated pool of threads.
+ *
+ * Hashing a password is deliberately slow so a burst of password logins could otherwise
+ * occupy every request thread.  The pool and its queue are bounded - once both are full,
+ * or a hash has waited longer than the timeout, the request fails straight away with a
+ * ServerBusyException.  At most threads + queue depth request threads can be waiting on
+ * a password hash, the rest remain free for the FIDO operations.  A hash which times out is
+ * cancelled, interrupting its thread, and the PasswordHashEngine stops the hash so the thread
+ * is free for the next one.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class PasswordHashingExecutor {
+
+	private static final Logger logger = LoggerFactory.getLogger(PasswordHashingExecutor.class);
+
+	@Autowired
+	private CounterService counterService;
+	@Autowired
+	private GaugeService gaugeService;
+
+	@Value("${fido.password.hash_threads:2}")
+	private int threads;
+	@Value("${fido.password.hash_queue_depth:16}")
+	private int queueDepth;
+	@Value("${fido.password.hash_timeout:5000}")
+	private long timeout;
+
+	private ThreadPoolExecutor executor;
+
+	public PasswordHashingExecutor() {
+	}
+
+	@PostConstruct
+	public void start() {
+
+		final AtomicInteger threadNumber = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueDepth),
+				runnable -> {
+					Thread thread = new Thread(runnable, "password-hash-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.AbortPolicy());
+		logger.info("Started the password hashing pool - threads: {}, queue depth: {}", threads, queueDepth);
+	}
+
+	@PreDestroy
+	public void stop() {
+		executor.shutdownNow();
+	}
+
+	/***
+	 * Run the hashing task on the hashing pool and wait for the result
+	 *
+	 * @param task
+	 * @return
+	 * @throws ServerBusyException if the pool is saturated or the task did not complete in time
+	 */
+	public <T> T execute(final Callable<T> task) {
+
+		final long submitted = System.nanoTime();
+		Future<T> future;
+		try {
+			future = executor.submit(() -> {
+				long started = System.nanoTime();
+				gaugeService.submit("password.hash.queue_wait", TimeUnit.NANOSECONDS.toMillis(started - submitted));
+				try {
+					return task.call();
+				} finally {
+					gaugeService.submit("password.hash.duration", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			counterService.increment("password.hash.rejected");
+			logger.error("The password hashing pool is saturated - rejecting the request");
+			throw new ServerBusyException(Error.SERVER_BUSY);
+		}
+		gaugeService.submit("password.hash.queue_depth", executor.getQueue().size());
+
+		try {
+			return future.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException ex) {
+			future.cancel(true);
+			counterService.increment("password.hash.timed_out");
+			logger.error("The password hash did not complete within {}ms - rejecting the request", timeout);
+			throw new ServerBusyException(Error.SERVER_BUSY);
+		} catch (InterruptedException ex) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw new RuntimeException(ex.getCause());
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.repository;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/***
+ * Moves the password hashes of the accounts created when they were held in the Account table
+ * into the Account_Credential table and then drops those columns from the Account table.
+ *
+ * The columns only exist in a database created by an earlier version so the migration checks
+ * for them before it does anything.  The copy skips the accounts already moved so if it is
+ * interrupted it completes the next time the server starts.
+ *
+ * @author Daon
+ *
+ */
+@Component
+public class AccountCredentialMigration {
+
+	private static final Logger logger = LoggerFactory.getLogger(AccountCredentialMigration.class);
+
+	private static final String FIND_COLUMN = "select count(*) from INFORMATION_SCHEMA.COLUMNS where TABLE_NAME = 'ACCOUNT' and COLUMN_NAME = ?";
+	private static final String COPY_CREDENTIALS = "insert into Account_Credential (Account_Id, Hash_Algorithm, Iterations, Salt, Hashed_Password) "
+			+ "select Id, %s, Iterations, Salt, Hashed_Password from Account a "
+			+ "where not exists (select 1 from Account_Credential c where c.Account_Id = a.Id)";
+	private static final String[] CREDENTIAL_COLUMNS = { "Salt", "Hashed_Password", "Iterations", "Hash_Algorithm" };
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	public AccountCredentialMigration() {
+	}
+
+	@PostConstruct
+	public void migrate() {
+
+		if (!this.hasColumn("SALT")) {
+			return;
+		}
+		// Accounts created before the hash algorithm was recorded use the iterated SHA-256 hash
+		String hashAlgorithm = this.hasColumn("HASH_ALGORITHM") ? "Hash_Algorithm" : "'SHA256_ITERATED'";
+		int moved = jdbcTemplate.update(String.format(COPY_CREDENTIALS, hashAlgorithm));
+		for (String column : CREDENTIAL_COLUMNS) {
+			jdbcTemplate.execute("alter table Account drop column if exists " + column);
+		}
+		logger.info("Moved the password hashes of {} accounts to the Account_Credential table", moved);
+	}
+
+	protected boolean hasColumn(String column) {
+		return jdbcTemplate.queryForObject(FIND_COLUMN, Integer.class, column) > 0;
+	}
+}
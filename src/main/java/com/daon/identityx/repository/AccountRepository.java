@@ -37,4 +37,6 @@ public interface AccountRepository extends PagingAndSortingRepository<Account, S
     Account findByEmail(String email);
     
     Account findById(String anId);
+    
+    Account findByIdXId(String idXId);
 }
\ No newline at end of file
@@ -0,0 +1,310 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.cache.BoundedCache;
+import com.daon.identityx.entity.Account;
+
+/***
+ * The AccountRepository used by the rest of the server.  The accounts found by ID, email
+ * address or IdentityX ID are read through a cache so that the account of an authenticated
+ * request is not read from the database each time.
+ *
+ * The accounts are held by ID.  The email address, lower cased, and the IdentityX ID are
+ * held as indexes to the account ID and an index whose account no longer matches is ignored.
+ * Every save and delete removes the account from the cache.  Each reader is given its own
+ * copy of a cached account.  The other queries go straight to the Spring Data repository.
+ *
+ * This is a Service rather than a Repository so that it is not proxied for exception
+ * translation, the Spring Data repository already translates its exceptions, and the
+ * LastLoginWriter can remove the accounts it has updated.
+ *
+ * @author Daon
+ *
+ */
+@Service
+@Primary
+public class CachingAccountRepository implements AccountRepository, PublicMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(CachingAccountRepository.class);
+
+	@Autowired
+	@Qualifier("accountRepository")
+	private AccountRepository accountRepository;
+
+	@Value("${fido.account.cache.enabled:true}")
+	private boolean enabled;
+	@Value("${fido.account.cache.max_size:10000}")
+	private int maxSize;
+	@Value("${fido.account.cache.ttl:300000}")
+	private long ttl;
+
+	private BoundedCache<String, Account> accounts;
+	private BoundedCache<String, String> emailIndex;
+	private BoundedCache<String, String> idXIdIndex;
+
+	public CachingAccountRepository() {
+	}
+
+	@PostConstruct
+	public void initialise() {
+
+		accounts = new BoundedCache<>("account.cache", maxSize, ttl);
+		emailIndex = new BoundedCache<>("account.cache.email", maxSize, ttl);
+		idXIdIndex = new BoundedCache<>("account.cache.idxid", maxSize, ttl);
+		logger.info("Created the account cache - enabled: {}, max size: {}, TTL: {}ms", enabled, maxSize, ttl);
+	}
+
+	@Override
+	public Account findById(String anId) {
+
+		if (!enabled) {
+			return accountRepository.findById(anId);
+		}
+		return this.copy(this.getCached(anId));
+	}
+
+	@Override
+	public Account findOne(String id) {
+		return this.findById(id);
+	}
+
+	@Override
+	public Account findByEmail(String email) {
+
+		if (!enabled || email == null) {
+			return accountRepository.findByEmail(email);
+		}
+		String key = email.toLowerCase();
+		String id = emailIndex.get(key, k -> this.getId(accountRepository.findByEmail(email)));
+		Account account = id == null ? null : this.getCached(id);
+		if (account == null || !key.equals(account.getEmail().toLowerCase())) {
+			emailIndex.invalidate(key);
+			return accountRepository.findByEmail(email);
+		}
+		return this.copy(account);
+	}
+
+	@Override
+	public Account findByIdXId(String idXId) {
+
+		if (!enabled || idXId == null) {
+			return accountRepository.findByIdXId(idXId);
+		}
+		String id = idXIdIndex.get(idXId, k -> this.getId(accountRepository.findByIdXId(idXId)));
+		Account account = id == null ? null : this.getCached(id);
+		if (account == null || !idXId.equals(account.getIdXId())) {
+			idXIdIndex.invalidate(idXId);
+			return accountRepository.findByIdXId(idXId);
+		}
+		return this.copy(account);
+	}
+
+	@Override
+	public <S extends Account> S save(S entity) {
+
+		try {
+			return accountRepository.save(entity);
+		} finally {
+			this.invalidate(entity);
+		}
+	}
+
+	@Override
+	public <S extends Account> Iterable<S> save(Iterable<S> entities) {
+
+		try {
+			return accountRepository.save(entities);
+		} finally {
+			for (Account account : entities) {
+				this.invalidate(account);
+			}
+		}
+	}
+
+	@Override
+	public void delete(String id) {
+
+		try {
+			accountRepository.delete(id);
+		} finally {
+			this.invalidate(id);
+		}
+	}
+
+	@Override
+	public void delete(Account entity) {
+
+		try {
+			accountRepository.delete(entity);
+		} finally {
+			this.invalidate(entity);
+		}
+	}
+
+	@Override
+	public void delete(Iterable<? extends Account> entities) {
+
+		try {
+			accountRepository.delete(entities);
+		} finally {
+			for (Account account : entities) {
+				this.invalidate(account);
+			}
+		}
+	}
+
+	@Override
+	public void deleteAll() {
+
+		try {
+			accountRepository.deleteAll();
+		} finally {
+			this.invalidateAll();
+		}
+	}
+
+	@Override
+	public boolean exists(String id) {
+		return accountRepository.exists(id);
+	}
+
+	@Override
+	public Iterable<Account> findAll() {
+		return accountRepository.findAll();
+	}
+
+	@Override
+	public Iterable<Account> findAll(Iterable<String> ids) {
+		return accountRepository.findAll(ids);
+	}
+
+	@Override
+	public Iterable<Account> findAll(Sort sort) {
+		return accountRepository.findAll(sort);
+	}
+
+	@Override
+	public Page<Account> findAll(Pageable pageable) {
+		return accountRepository.findAll(pageable);
+	}
+
+	@Override
+	public long count() {
+		return accountRepository.count();
+	}
+
+	@Override
+	public Page<Account> findByLastNameLike(String lastName, Pageable pageable) {
+		return accountRepository.findByLastNameLike(lastName, pageable);
+	}
+
+	@Override
+	public Page<Account> findByEmailLike(String email, Pageable pageable) {
+		return accountRepository.findByEmailLike(email, pageable);
+	}
+
+	/***
+	 * Remove the account and its indexes from the cache
+	 *
+	 * @param account
+	 */
+	public void invalidate(Account account) {
+
+		if (account == null) {
+			return;
+		}
+		if (account.getId() != null) {
+			accounts.invalidate(account.getId());
+		}
+		if (account.getEmail() != null) {
+			emailIndex.invalidate(account.getEmail().toLowerCase());
+		}
+		if (account.getIdXId() != null) {
+			idXIdIndex.invalidate(account.getIdXId());
+		}
+	}
+
+	/***
+	 * Remove the account from the cache, leaving its indexes which are checked on use
+	 *
+	 * @param accountId
+	 */
+	public void invalidate(String accountId) {
+
+		if (accountId != null) {
+			accounts.invalidate(accountId);
+		}
+	}
+
+	public void invalidateAll() {
+
+		accounts.invalidateAll();
+		emailIndex.invalidateAll();
+		idXIdIndex.invalidateAll();
+	}
+
+	protected Account getCached(String id) {
+		return id == null ? null : accounts.get(id, accountRepository::findById);
+	}
+
+	protected String getId(Account account) {
+		return account == null ? null : account.getId();
+	}
+
+	protected Account copy(Account account) {
+		return account == null ? null : new Account(account);
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+
+		List<Metric<?>> metrics = new ArrayList<>();
+		metrics.addAll(accounts.metrics());
+		metrics.addAll(emailIndex.metrics());
+		metrics.addAll(idXIdIndex.metrics());
+		return metrics;
+	}
+
+	public AccountRepository getAccountRepository() {
+		return accountRepository;
+	}
+
+	public void setAccountRepository(AccountRepository accountRepository) {
+		this.accountRepository = accountRepository;
+	}
+}
@@ -0,0 +1,41 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.repository;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.daon.identityx.entity.IdXUser;
+
+/***
+ * Stores the IdentityX user and registration of each email address.
+ * 
+ * @author Daon
+ *
+ */
+public interface IdXUserRepository extends CrudRepository<IdXUser, String> {
+
+    IdXUser findByEmail(String email);
+
+    @Modifying
+    @Transactional
+    @Query("delete from IdXUser u where u.userId = ?1")
+    int deleteByUserId(String userId);
+}
@@ -0,0 +1,199 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.daon.identityx.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.entity.Account;
+
+/***
+ * Records the time each account last logged in.
+ *
+ * If write behind is enabled a login only records the time in memory.  The times are held by
+ * account ID so any number of logins by the same account between two flushes are merged into
+ * the latest one, and a background thread writes them to the Account table in one batch.  Until
+ * its time has been written the pending time is returned in place of the time held by the
+ * account.  Once written the account is removed from the account cache so that the next read
+ * sees the new time.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class LastLoginWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger(LastLoginWriter.class);
+
+	private static final String UPDATE_LAST_LOGGED_IN = "update Account set Last_Logged_In = ? where Id = ? and (Last_Logged_In is null or Last_Logged_In < ?)";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	@Autowired
+	private CachingAccountRepository cachingAccountRepository;
+	@Autowired
+	private CounterService counterService;
+
+	@Value("${fido.account.last_login.write_behind:true}")
+	private boolean writeBehind;
+	@Value("${fido.account.last_login.write_behind_interval:5000}")
+	private long writeBehindInterval;
+
+	private final ConcurrentHashMap<String, Timestamp> pending = new ConcurrentHashMap<>();
+	private ScheduledExecutorService writer;
+
+	public LastLoginWriter() {
+	}
+
+	@PostConstruct
+	public void start() {
+
+		if (!writeBehind) {
+			logger.info("Last login write behind is disabled - the last login time will be written on each login");
+			return;
+		}
+		writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "last-login-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		writer.scheduleWithFixedDelay(this::flush, writeBehindInterval, writeBehindInterval, TimeUnit.MILLISECONDS);
+		logger.info("Started the last login writer - interval: {}ms", writeBehindInterval);
+	}
+
+	@PreDestroy
+	public void stop() {
+
+		if (writer == null) {
+			return;
+		}
+		writer.shutdown();
+		try {
+			writer.awaitTermination(writeBehindInterval * 2, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.flush();
+	}
+
+	/***
+	 * Record that the account logged in at the given time
+	 *
+	 * @param account
+	 * @param loggedIn
+	 */
+	public void record(Account account, Timestamp loggedIn) {
+
+		counterService.increment("account.last_login.recorded");
+		if (!writeBehind) {
+			this.write(account.getId(), loggedIn);
+			return;
+		}
+		pending.merge(account.getId(), loggedIn, (current, latest) -> latest.after(current) ? latest : current);
+	}
+
+	/***
+	 * Get the time the account last logged in, including a login which has not been written yet
+	 *
+	 * @param account
+	 * @return
+	 */
+	public Timestamp getLastLoggedIn(Account account) {
+
+		Timestamp loggedIn = pending.get(account.getId());
+		if (loggedIn == null || (account.getLastLoggedIn() != null && account.getLastLoggedIn().after(loggedIn))) {
+			return account.getLastLoggedIn();
+		}
+		return loggedIn;
+	}
+
+	/***
+	 * Write a single last login time straight away
+	 *
+	 * @param accountId
+	 * @param loggedIn
+	 */
+	protected void write(String accountId, Timestamp loggedIn) {
+
+		jdbcTemplate.update(UPDATE_LAST_LOGGED_IN, loggedIn, accountId, loggedIn);
+		cachingAccountRepository.invalidate(accountId);
+	}
+
+	/***
+	 * Write the pending last login times to the Account table in one batch
+	 */
+	protected synchronized void flush() {
+
+		try {
+			final List<Map.Entry<String, Timestamp>> toWrite = new ArrayList<>();
+			for (Map.Entry<String, Timestamp> entry : pending.entrySet()) {
+				toWrite.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+			}
+			if (toWrite.isEmpty()) {
+				return;
+			}
+			jdbcTemplate.batchUpdate(UPDATE_LAST_LOGGED_IN, new BatchPreparedStatementSetter() {
+				@Override
+				public void setValues(PreparedStatement ps, int i) throws SQLException {
+					Map.Entry<String, Timestamp> entry = toWrite.get(i);
+					ps.setTimestamp(1, entry.getValue());
+					ps.setString(2, entry.getKey());
+					ps.setTimestamp(3, entry.getValue());
+				}
+
+				@Override
+				public int getBatchSize() {
+					return toWrite.size();
+				}
+			});
+			// The cached account is removed before the pending time so a reader sees one or the other
+			for (Map.Entry<String, Timestamp> entry : toWrite) {
+				cachingAccountRepository.invalidate(entry.getKey());
+				pending.remove(entry.getKey(), entry.getValue());
+			}
+			counterService.increment("account.last_login.flushes");
+			logger.debug("Wrote the last login time of {} accounts", toWrite.size());
+		} catch (Exception ex) {
+			logger.error("An exception occurred while attempting to write the last login times.  Exception: " + ex.getMessage(), ex);
+		}
+	}
+
+	public boolean isWriteBehind() {
+		return writeBehind;
+	}
+}
@@ -0,0 +1,124 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.daon.identityx.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/***
+ * Groups session IDs into buckets by the tick in which they expire so that the expired
+ * sessions can be found without looking at the sessions which have not expired.
+ *
+ * Adding an ID only touches the bucket for its tick.  Taking the due IDs removes the buckets
+ * whose tick has passed, oldest first.  A bucket is closed when it is taken so an ID added to
+ * it at the same moment is placed in a new bucket and picked up on the next pass.
+ *
+ * @author Daon
+ *
+ */
+public class ExpiryWheel {
+
+	private final long tickMillis;
+	private final ConcurrentSkipListMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+
+	public ExpiryWheel(long tickMillis) {
+		this.tickMillis = tickMillis;
+	}
+
+	/***
+	 * Track the ID so that it is returned once the expiry time has passed
+	 *
+	 * @param sessionId
+	 * @param expiresAt
+	 */
+	public void add(String sessionId, long expiresAt) {
+
+		Long tick = (expiresAt + tickMillis - 1) / tickMillis;
+		for (;;) {
+			Bucket bucket = buckets.get(tick);
+			if (bucket == null) {
+				Bucket newBucket = new Bucket();
+				bucket = buckets.putIfAbsent(tick, newBucket);
+				if (bucket == null) {
+					bucket = newBucket;
+				}
+			}
+			if (bucket.add(sessionId)) {
+				return;
+			}
+			buckets.remove(tick, bucket);
+		}
+	}
+
+	/***
+	 * Remove the buckets which are due and return their IDs
+	 *
+	 * @param now
+	 * @param listener told the time each bucket was due, to measure lag
+	 * @return the IDs whose expiry time has passed
+	 */
+	public List<String> takeDue(long now, DueListener listener) {
+
+		List<String> due = new ArrayList<>();
+		Map.Entry<Long, Bucket> first;
+		while ((first = buckets.firstEntry()) != null && first.getKey() * tickMillis <= now) {
+			if (buckets.remove(first.getKey(), first.getValue())) {
+				due.addAll(first.getValue().close());
+				if (listener != null) {
+					listener.bucketDue(first.getKey() * tickMillis);
+				}
+			}
+		}
+		return due;
+	}
+
+	public int getBucketCount() {
+		return buckets.size();
+	}
+
+	public long getTickMillis() {
+		return tickMillis;
+	}
+
+	/***
+	 * Told the time at which each bucket taken was due
+	 */
+	public interface DueListener {
+		void bucketDue(long dueAt);
+	}
+
+	private static class Bucket {
+
+		private List<String> sessionIds = new ArrayList<>();
+
+		synchronized boolean add(String sessionId) {
+			if (sessionIds == null) {
+				return false;
+			}
+			sessionIds.add(sessionId);
+			return true;
+		}
+
+		synchronized List<String> close() {
+			List<String> closed = sessionIds;
+			sessionIds = null;
+			return closed;
+		}
+	}
+}
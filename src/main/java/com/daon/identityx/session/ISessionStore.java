@@ -0,0 +1,59 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.daon.identityx.session;
+
+import com.daon.identityx.entity.Session;
+
+/***
+ * The interface through which sessions are created, found, extended and removed.
+ * 
+ * @author Daon
+ *
+ */
+public interface ISessionStore {
+
+	/***
+	 * Store a new session, generating its ID
+	 * 
+	 * @param session
+	 * @return
+	 */
+	public Session create(Session session);
+
+	/***
+	 * Find the session with the ID.  The session returned may have expired.
+	 * 
+	 * @param sessionId
+	 * @return the session or null if there is no session with the ID
+	 */
+	public Session findById(String sessionId);
+
+	/***
+	 * Extend the session so that it expires sessionPeriod milliseconds from now
+	 * 
+	 * @param session
+	 * @param sessionPeriod
+	 */
+	public void extend(Session session, long sessionPeriod);
+
+	/***
+	 * Remove the session
+	 * 
+	 * @param session
+	 */
+	public void delete(Session session);
+}
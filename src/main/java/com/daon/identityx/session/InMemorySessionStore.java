@@ -0,0 +1,412 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.daon.identityx.session;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.daon.identityx.entity.Session;
+import com.daon.identityx.repository.SessionRepository;
+import com.daon.identityx.utils.IdGenerator;
+
+/***
+ * Holds the sessions in memory so that validating a session is a single map lookup.
+ *
+ * Extending a session only changes the in memory expiry.  If write behind is enabled the
+ * Session table is only updated when the expiry held in the database is within the persist
+ * threshold of the current time, so a busy session is written a few times during its life
+ * rather than on every request.  New, extended and deleted sessions are written in batches
+ * by a background thread.  A session which is not in memory, for instance after a restart,
+ * is loaded from the Session table.
+ *
+ * A deleted session is held as a tombstone until its row has been deleted, so that it is not
+ * loaded back from the Session table or written back to it in the meantime.  If a batch fails
+ * its sessions are queued again for the next write.
+ *
+ * Expired sessions are removed from memory the next time they are looked up or when the
+ * SessionReaper finds them.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class InMemorySessionStore implements ISessionStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(InMemorySessionStore.class);
+
+	private static final String MERGE_SESSION = "merge into Session (Id, Account_Id, CreatedDTM, ExpiringDTM) key (Id) values (?, ?, ?, ?)";
+	private static final String DELETE_SESSION = "delete from Session where Id = ?";
+
+	@Autowired
+	private SessionRepository sessionRepository;
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	@Autowired
+	private SessionReaper sessionReaper;
+
+	@Value("${fido.session.write_behind:true}")
+	private boolean writeBehind;
+	@Value("${fido.session.write_behind_interval:1000}")
+	private long writeBehindInterval;
+	@Value("${fido.session.persist_threshold:300000}")
+	private long persistThreshold;
+
+	private final ConcurrentHashMap<String, SessionEntry> sessions = new ConcurrentHashMap<>();
+	private final ConcurrentLinkedQueue<SessionEntry> dirtySessions = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<String> deletedSessions = new ConcurrentLinkedQueue<>();
+	private final Set<String> tombstones = ConcurrentHashMap.newKeySet();
+	private ScheduledExecutorService writer;
+
+	public InMemorySessionStore() {
+	}
+
+	@PostConstruct
+	public void start() {
+
+		if (!writeBehind) {
+			logger.info("Session write behind is disabled - sessions will only be held in memory");
+			return;
+		}
+		writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "session-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		writer.scheduleWithFixedDelay(this::flush, writeBehindInterval, writeBehindInterval, TimeUnit.MILLISECONDS);
+		logger.info("Started the session writer - interval: {}ms, persist threshold: {}ms", writeBehindInterval, persistThreshold);
+	}
+
+	@PreDestroy
+	public void stop() {
+
+		if (writer == null) {
+			return;
+		}
+		writer.shutdown();
+		try {
+			writer.awaitTermination(writeBehindInterval * 2, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.flush();
+	}
+
+	@Override
+	public Session create(Session session) {
+
+		if (session.getId() == null) {
+			session.setId(IdGenerator.newId());
+		}
+		SessionEntry entry = new SessionEntry(session, 0);
+		sessions.put(session.getId(), entry);
+		this.markDirty(entry);
+		sessionReaper.track(session.getId(), entry.getExpiresAt());
+		return session;
+	}
+
+	@Override
+	public Session findById(String sessionId) {
+
+		if (sessionId == null) {
+			return null;
+		}
+		SessionEntry entry = sessions.get(sessionId);
+		if (entry == null) {
+			entry = this.load(sessionId);
+			if (entry == null) {
+				return null;
+			}
+		}
+		if (entry.getExpiresAt() < System.currentTimeMillis()) {
+			sessions.remove(sessionId, entry);
+		}
+		return entry.getSession();
+	}
+
+	@Override
+	public void extend(Session session, long sessionPeriod) {
+
+		SessionEntry entry = sessions.get(session.getId());
+		if (entry == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		entry.setExpiresAt(now + sessionPeriod);
+		if (entry.getPersistedExpiresAt() - now < persistThreshold) {
+			this.markDirty(entry);
+		}
+	}
+
+	@Override
+	public void delete(Session session) {
+
+		// The tombstone is added first so that a concurrent load cannot bring the session back
+		if (writeBehind) {
+			tombstones.add(session.getId());
+		}
+		SessionEntry entry = sessions.remove(session.getId());
+		if (entry != null) {
+			entry.markDeleted();
+		}
+		if (writeBehind) {
+			deletedSessions.add(session.getId());
+		}
+	}
+
+	/***
+	 * Load the session from the Session table into memory
+	 *
+	 * @param sessionId
+	 * @return
+	 */
+	protected SessionEntry load(String sessionId) {
+
+		if (!writeBehind || tombstones.contains(sessionId)) {
+			return null;
+		}
+		Session session = sessionRepository.findById(sessionId);
+		if (session == null) {
+			return null;
+		}
+		SessionEntry entry = new SessionEntry(session, session.getExpiringDTM().getTime());
+		SessionEntry existing = sessions.putIfAbsent(sessionId, entry);
+		if (existing != null) {
+			return existing;
+		}
+		// The session may have been deleted while its row was read
+		if (tombstones.contains(sessionId)) {
+			sessions.remove(sessionId, entry);
+			entry.markDeleted();
+			return null;
+		}
+		sessionReaper.track(sessionId, entry.getExpiresAt());
+		return entry;
+	}
+
+	/***
+	 * Get the expiry of the session held in memory
+	 *
+	 * @param sessionId
+	 * @return the expiry or -1 if the session is not in memory
+	 */
+	public long getExpiresAt(String sessionId) {
+
+		SessionEntry entry = sessions.get(sessionId);
+		return entry == null ? -1 : entry.getExpiresAt();
+	}
+
+	/***
+	 * Remove the session from memory without deleting it from the Session table
+	 *
+	 * @param sessionId
+	 */
+	public void evict(String sessionId) {
+
+		SessionEntry entry = sessions.remove(sessionId);
+		if (entry != null) {
+			entry.markDeleted();
+		}
+	}
+
+	public boolean isWriteBehind() {
+		return writeBehind;
+	}
+
+	protected void markDirty(SessionEntry entry) {
+
+		if (writeBehind && entry.markDirty()) {
+			dirtySessions.add(entry);
+		}
+	}
+
+	/***
+	 * Write the new and extended sessions to the Session table and remove the deleted ones.
+	 * The deleted sessions are removed after the writes so that a session deleted while it
+	 * was being written is not left in the table.
+	 */
+	protected synchronized void flush() {
+
+		int written = this.writeSessions();
+		int deleted = this.deleteSessions();
+		if (written > 0 || deleted > 0) {
+			logger.debug("Wrote {} sessions and deleted {} sessions", written, deleted);
+		}
+	}
+
+	/***
+	 * Write the dirty sessions, queueing them again if the write fails
+	 *
+	 * @return the number of sessions written
+	 */
+	protected int writeSessions() {
+
+		final List<SessionEntry> toWrite = new ArrayList<>();
+		final List<Long> expiries = new ArrayList<>();
+		SessionEntry entry;
+		while ((entry = dirtySessions.poll()) != null) {
+			entry.clearDirty();
+			if (!entry.isDeleted() && !tombstones.contains(entry.getSession().getId())) {
+				toWrite.add(entry);
+				expiries.add(entry.getExpiresAt());
+			}
+		}
+		if (toWrite.isEmpty()) {
+			return 0;
+		}
+		try {
+			jdbcTemplate.batchUpdate(MERGE_SESSION, new BatchPreparedStatementSetter() {
+				@Override
+				public void setValues(PreparedStatement ps, int i) throws SQLException {
+					Session session = toWrite.get(i).getSession();
+					ps.setString(1, session.getId());
+					ps.setString(2, session.getAccountId());
+					ps.setTimestamp(3, session.getCreatedDTM());
+					ps.setTimestamp(4, new Timestamp(expiries.get(i)));
+				}
+
+				@Override
+				public int getBatchSize() {
+					return toWrite.size();
+				}
+			});
+		} catch (Exception ex) {
+			logger.error("An exception occurred while attempting to write {} sessions, they will be written again.  Exception: {}",
+					toWrite.size(), ex.getMessage(), ex);
+			for (SessionEntry unwritten : toWrite) {
+				this.markDirty(unwritten);
+			}
+			return 0;
+		}
+		for (int i = 0; i < toWrite.size(); i++) {
+			toWrite.get(i).setPersistedExpiresAt(expiries.get(i));
+		}
+		return toWrite.size();
+	}
+
+	/***
+	 * Delete the deleted sessions and remove their tombstones, queueing them again if the delete fails
+	 *
+	 * @return the number of sessions deleted
+	 */
+	protected int deleteSessions() {
+
+		final List<String> toDelete = new ArrayList<>();
+		String sessionId;
+		while ((sessionId = deletedSessions.poll()) != null) {
+			toDelete.add(sessionId);
+		}
+		if (toDelete.isEmpty()) {
+			return 0;
+		}
+		try {
+			jdbcTemplate.batchUpdate(DELETE_SESSION, new BatchPreparedStatementSetter() {
+				@Override
+				public void setValues(PreparedStatement ps, int i) throws SQLException {
+					ps.setString(1, toDelete.get(i));
+				}
+
+				@Override
+				public int getBatchSize() {
+					return toDelete.size();
+				}
+			});
+		} catch (Exception ex) {
+			logger.error("An exception occurred while attempting to delete {} sessions, they will be deleted again.  Exception: {}",
+					toDelete.size(), ex.getMessage(), ex);
+			deletedSessions.addAll(toDelete);
+			return 0;
+		}
+		tombstones.removeAll(toDelete);
+		return toDelete.size();
+	}
+
+	/***
+	 * A session held in memory along with its expiry and the expiry last written to the database
+	 */
+	protected static class SessionEntry {
+
+		private final Session session;
+		private final AtomicBoolean dirty = new AtomicBoolean();
+		private volatile long expiresAt;
+		private volatile long persistedExpiresAt;
+		private volatile boolean deleted;
+
+		SessionEntry(Session session, long persistedExpiresAt) {
+			this.session = session;
+			this.expiresAt = session.getExpiringDTM().getTime();
+			this.persistedExpiresAt = persistedExpiresAt;
+		}
+
+		Session getSession() {
+			return session;
+		}
+
+		long getExpiresAt() {
+			return expiresAt;
+		}
+
+		void setExpiresAt(long expiresAt) {
+			this.expiresAt = expiresAt;
+			this.session.setExpiringDTM(new Timestamp(expiresAt));
+		}
+
+		long getPersistedExpiresAt() {
+			return persistedExpiresAt;
+		}
+
+		void setPersistedExpiresAt(long persistedExpiresAt) {
+			this.persistedExpiresAt = persistedExpiresAt;
+		}
+
+		boolean markDirty() {
+			return dirty.compareAndSet(false, true);
+		}
+
+		void clearDirty() {
+			dirty.set(false);
+		}
+
+		boolean isDeleted() {
+			return deleted;
+		}
+
+		void markDeleted() {
+			this.deleted = true;
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.daon.identityx.session;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/***
+ * Removes expired sessions from memory and from the Session table.
+ *
+ * Every session created or loaded by the InMemorySessionStore is placed in an ExpiryWheel
+ * by its expiry time.  On each tick the reaper takes the IDs whose bucket is due and asks the
+ * store for the current expiry - a session which has been extended is placed back in the wheel,
+ * the others are evicted and deleted from the Session table in bounded batches.
+ *
+ * Sessions left in the table by a previous run are not in the wheel so on start up the reaper
+ * deletes them in batches, using the index on the expiry time rather than scanning the table.
+ *
+ * @author Daon
+ *
+ */
+@Service
+public class SessionReaper {
+
+	private static final Logger logger = LoggerFactory.getLogger(SessionReaper.class);
+
+	private static final String DELETE_EXPIRED_SESSION = "delete from Session where Id = ? and ExpiringDTM < ?";
+	private static final String FIND_EXPIRED_SESSIONS = "select Id from Session where ExpiringDTM < ? order by ExpiringDTM limit ?";
+
+	@Autowired
+	private InMemorySessionStore sessionStore;
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	@Autowired
+	private GaugeService gaugeService;
+
+	@Value("${fido.session.reaper.enabled:true}")
+	private boolean enabled;
+	@Value("${fido.session.reaper.tick:10000}")
+	private long tick;
+	@Value("${fido.session.reaper.batch_size:500}")
+	private int batchSize;
+
+	private ExpiryWheel wheel;
+	private ScheduledExecutorService reaper;
+	private final AtomicLong reaped = new AtomicLong();
+
+	public SessionReaper() {
+	}
+
+	@PostConstruct
+	public void start() {
+
+		this.wheel = new ExpiryWheel(tick);
+		if (!enabled) {
+			logger.info("The session reaper is disabled - expired sessions will not be removed");
+			return;
+		}
+		reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "session-reaper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reaper.execute(this::reapLeftovers);
+		reaper.scheduleWithFixedDelay(this::reap, tick, tick, TimeUnit.MILLISECONDS);
+		logger.info("Started the session reaper - tick: {}ms, batch size: {}", tick, batchSize);
+	}
+
+	@PreDestroy
+	public void stop() {
+
+		if (reaper != null) {
+			reaper.shutdownNow();
+		}
+	}
+
+	/***
+	 * Track the session so that it is reaped once it expires
+	 *
+	 * @param sessionId
+	 * @param expiresAt
+	 */
+	public void track(String sessionId, long expiresAt) {
+
+		if (enabled) {
+			wheel.add(sessionId, expiresAt);
+		}
+	}
+
+	/***
+	 * Reap the sessions whose expiry bucket is due
+	 */
+	protected void reap() {
+
+		try {
+			final long now = System.currentTimeMillis();
+			final long[] oldestDue = { now };
+			List<String> due = wheel.takeDue(now, dueAt -> oldestDue[0] = Math.min(oldestDue[0], dueAt));
+			gaugeService.submit("session.reaper.lag", now - oldestDue[0]);
+			gaugeService.submit("session.reaper.tracked_buckets", wheel.getBucketCount());
+			if (due.isEmpty()) {
+				return;
+			}
+
+			List<String> expired = new ArrayList<>(Math.min(due.size(), batchSize));
+			for (String sessionId : due) {
+				long expiresAt = sessionStore.getExpiresAt(sessionId);
+				if (expiresAt >= now) {
+					wheel.add(sessionId, expiresAt);
+					continue;
+				}
+				sessionStore.evict(sessionId);
+				expired.add(sessionId);
+				if (expired.size() == batchSize) {
+					this.deleteBatch(expired, now);
+					expired.clear();
+				}
+			}
+			if (!expired.isEmpty()) {
+				this.deleteBatch(expired, now);
+			}
+		} catch (Exception ex) {
+			logger.error("An exception occurred while attempting to reap the expired sessions.  Exception: " + ex.getMessage(), ex);
+		}
+	}
+
+	/***
+	 * Delete the sessions which expired before this server started and so are not in the wheel
+	 */
+	protected void reapLeftovers() {
+
+		if (!sessionStore.isWriteBehind()) {
+			return;
+		}
+		try {
+			long now = System.currentTimeMillis();
+			List<String> expired;
+			do {
+				expired = jdbcTemplate.queryForList(FIND_EXPIRED_SESSIONS, String.class, new Timestamp(now), batchSize);
+				if (!expired.isEmpty()) {
+					this.deleteBatch(expired, now);
+				}
+			} while (expired.size() == batchSize);
+			logger.info("Removed the sessions which expired before the server started - total reaped: {}", reaped.get());
+		} catch (Exception ex) {
+			logger.error("An exception occurred while attempting to reap the sessions left from a previous run.  Exception: " + ex.getMessage(), ex);
+		}
+	}
+
+	/***
+	 * Delete the sessions from the Session table.  A row is only deleted if it has expired
+	 * so a session which has been reloaded and extended in the meantime is left alone.
+	 *
+	 * @param sessionIds
+	 * @param now
+	 */
+	protected void deleteBatch(final List<String> sessionIds, long now) {
+
+		long start = System.currentTimeMillis();
+		if (sessionStore.isWriteBehind()) {
+			final Timestamp expiredBefore = new Timestamp(now);
+			jdbcTemplate.batchUpdate(DELETE_EXPIRED_SESSION, new BatchPreparedStatementSetter() {
+				@Override
+				public void setValues(PreparedStatement ps, int i) throws SQLException {
+					ps.setString(1, sessionIds.get(i));
+					ps.setTimestamp(2, expiredBefore);
+				}
+
+				@Override
+				public int getBatchSize() {
+					return sessionIds.size();
+				}
+			});
+		}
+		long duration = System.currentTimeMillis() - start;
+		gaugeService.submit("session.reaper.reaped", reaped.addAndGet(sessionIds.size()));
+		gaugeService.submit("session.reaper.batch.duration", duration);
+		gaugeService.submit("session.reaper.batch.size", sessionIds.size());
+		logger.debug("Reaped {} expired sessions in {}ms", sessionIds.size(), duration);
+	}
+}
@@ -17,14 +17,18 @@
 package com.daon.identityx.utils;
 
 import java.io.Serializable;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.util.Base64;
 import java.util.Map;
+import java.util.Properties;
 
 import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.dialect.Dialect;
 import org.hibernate.engine.spi.SessionImplementor;
 import org.hibernate.id.IdentifierGenerator;
 import org.hibernate.service.spi.Configurable;
+import org.hibernate.type.Type;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,27 +36,121 @@ import org.slf4j.LoggerFactory;
  * Generates the unique ID for the rows within a database table
  * Uses a GUID rather than having to ask the DB to manage it
  * 
+ * Every insert needs an ID so generating one must not be a point of contention.  Each thread
+ * has its own SecureRandom and takes the random bytes for its IDs from a block which it refills
+ * when used up.  The 16 random bytes are encoded as the first 22 characters of their URL safe
+ * Base64 encoding.
+ * 
+ * Fully random IDs insert into a random page of the primary key index.  For tables which are
+ * mostly appended to the generator can instead create time ordered IDs by setting the
+ * time_ordered parameter on the entity's GenericGenerator:
+ * 
+ * 	@GenericGenerator(name="idGenerator", strategy="com.daon.identityx.utils.IdGenerator",
+ * 			parameters=@Parameter(name=IdGenerator.TIME_ORDERED, value="true"))
+ * 
+ * A time ordered ID starts with the 48 bit creation time in milliseconds followed by 80 random
+ * bits, encoded with an alphabet in ASCII order so the IDs sort by their creation time (to the
+ * millisecond) and new rows are added at the end of the index.  Both kinds of ID are 22
+ * characters long and can be held in the same column.
+ * 
+ * A time ordered ID has only 80 random bits and reveals when it was created, so it must not be
+ * used where the ID is a secret.  Session IDs are bearer tokens and stay fully random.
+ * 
  * @author Daon
  *
  */
-public class IdGenerator implements IdentifierGenerator, Configurable {
+public class IdGenerator implements IdentifierGenerator, Configurable, org.hibernate.id.Configurable {
+
+	public static final String TIME_ORDERED = "time_ordered";
 
 	private static final Logger logger = LoggerFactory.getLogger(IdGenerator.class);
-	
-	private SecureRandom secureRandom = new SecureRandom();
-	
+
+	private static final int ID_BYTES = 16;
+	private static final int ID_LENGTH = 22;
+	private static final int IDS_PER_BLOCK = 64;
+	private static final int TIME_BYTES = 6;
+	private static final char[] URL_SAFE_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+	private static final char[] ORDERED_ALPHABET = "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz".toCharArray();
+
+	private static final ThreadLocal<RandomBlock> randomBlock = new ThreadLocal<RandomBlock>() {
+		@Override
+		protected RandomBlock initialValue() {
+			try {
+				// SHA1PRNG keeps its state in the instance - the default NativePRNG instances all share one locked source
+				return new RandomBlock(SecureRandom.getInstance("SHA1PRNG"));
+			} catch (NoSuchAlgorithmException e) {
+				logger.warn("SHA1PRNG is not available - using the default SecureRandom");
+				return new RandomBlock(new SecureRandom());
+			}
+		}
+	};
+
+	private boolean timeOrdered;
+
 	public IdGenerator() {
 	}
 
-    public synchronized Serializable generate(SessionImplementor session, Object obj) throws HibernateException {
+	public Serializable generate(SessionImplementor session, Object obj) throws HibernateException {
 
-    	byte[] keyBytes = new byte[16];
-    	this.getSecureRandom().nextBytes(keyBytes);
-    	String key = Base64.getUrlEncoder().encodeToString(keyBytes);
-    	key = key.substring(0,22);
-    	logger.trace("Next key will be: {}", key);
-        return key;
-    }
+		String key = timeOrdered ? newTimeOrderedId() : newId();
+		logger.trace("Next key will be: {}", key);
+		return key;
+	}
+
+	/***
+	 * Generate a new ID outside of Hibernate
+	 * 
+	 * @return
+	 */
+	public static String newId() {
+
+		RandomBlock block = randomBlock.get();
+		return encode(block.bytes, block.next(), URL_SAFE_ALPHABET);
+	}
+
+	/***
+	 * Generate a new ID which sorts by its creation time outside of Hibernate
+	 * 
+	 * @return
+	 */
+	public static String newTimeOrderedId() {
+
+		RandomBlock block = randomBlock.get();
+		int offset = block.next();
+		long now = System.currentTimeMillis();
+		for (int i = TIME_BYTES - 1; i >= 0; i--) {
+			block.bytes[offset + i] = (byte) now;
+			now >>>= 8;
+		}
+		return encode(block.bytes, offset, ORDERED_ALPHABET);
+	}
+
+	/***
+	 * Encode 16 bytes as the first 22 characters of their Base64 encoding using the alphabet
+	 * 
+	 * @param bytes
+	 * @param offset
+	 * @param alphabet
+	 * @return
+	 */
+	protected static String encode(byte[] bytes, int offset, char[] alphabet) {
+
+		char[] chars = new char[ID_LENGTH];
+		int c = 0;
+		int end = offset + ID_BYTES - 1;
+		int i = offset;
+		for (; i < end; i += 3) {
+			int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+			chars[c++] = alphabet[(bits >>> 18) & 0x3f];
+			chars[c++] = alphabet[(bits >>> 12) & 0x3f];
+			chars[c++] = alphabet[(bits >>> 6) & 0x3f];
+			chars[c++] = alphabet[bits & 0x3f];
+		}
+		int last = bytes[i] & 0xff;
+		chars[c++] = alphabet[last >>> 2];
+		chars[c] = alphabet[(last << 4) & 0x3f];
+		return new String(chars);
+	}
  
 	@SuppressWarnings("rawtypes")
 	@Override
@@ -61,11 +159,41 @@ public class IdGenerator implements IdentifierGenerator, Configurable {
     	logger.debug("Configuring the new instance of the RandomUUIDSequenceGenerator");
 	}
 
-	public SecureRandom getSecureRandom() {
-		return secureRandom;
+	@Override
+	public void configure(Type type, Properties params, Dialect dialect) throws MappingException {
+
+		this.timeOrdered = Boolean.parseBoolean(params.getProperty(TIME_ORDERED));
+		logger.debug("Configured the ID generator for: {} - time ordered: {}", params.getProperty(ENTITY_NAME), timeOrdered);
+	}
+
+	public boolean isTimeOrdered() {
+		return timeOrdered;
 	}
 
-	public void setSecureRandom(SecureRandom secureRandom) {
-		this.secureRandom = secureRandom;
+	/***
+	 * A block of random bytes owned by one thread
+	 */
+	private static class RandomBlock {
+
+		private final SecureRandom secureRandom;
+		private final byte[] bytes = new byte[ID_BYTES * IDS_PER_BLOCK];
+		private int position = bytes.length;
+
+		RandomBlock(SecureRandom secureRandom) {
+			this.secureRandom = secureRandom;
+		}
+
+		/***
+		 * @return the offset of the next 16 unused bytes
+		 */
+		int next() {
+			if (position == bytes.length) {
+				secureRandom.nextBytes(bytes);
+				position = 0;
+			}
+			int offset = position;
+			position += ID_BYTES;
+			return offset;
+		}
 	}
-}
\ No newline at end of file
+}
@@ -9,9 +9,6 @@ create table if not exists Account (
 	Last_Name		VARCHAR(50) NOT NULL,
 	Email			VARCHAR_IGNORECASE(255) NOT NULL UNIQUE,
 	IdXId			CHAR(26),
-	Iterations		int NOT NULL,
-	Salt			blob NOT NULL,
-	Hashed_Password	blob NOT NULL,
 	Last_Logged_In	Timestamp NOT NULL,
 	CreatedDTM		Timestamp NOT NULL
 );
@@ -20,6 +17,18 @@ CREATE UNIQUE INDEX  IF NOT EXISTS EMAIL_UNIQUE ON Account(Email);
 
 CREATE INDEX  IF NOT EXISTS IDXID_INDEX ON Account(IdXId);
 
+-- The password hash of each account - only read by a password login.
+-- The hashes of accounts created when they were held in the Account table are moved here
+-- by the AccountCredentialMigration at start up.
+create table if not exists Account_Credential (
+	Account_Id		CHAR(22) NOT NULL PRIMARY KEY,
+	Hash_Algorithm	VARCHAR(20) NOT NULL,
+	Iterations		int NOT NULL,
+	Salt			BINARY(32) NOT NULL,
+	Hashed_Password	BINARY(32) NOT NULL,
+	FOREIGN KEY (Account_Id) REFERENCES Account(Id) ON DELETE CASCADE
+);
+
 -- Audit table
 create table if not exists Audit (
 	Id				CHAR(22) NOT NULL PRIMARY KEY,
@@ -38,6 +47,19 @@ create table if not exists Session (
 	ExpiringDTM		Timestamp NOT NULL
 );
 
+CREATE INDEX  IF NOT EXISTS EXPIRINGDTM_INDEX ON Session(ExpiringDTM);
+
+-- The IdentityX user and registration of each email address
+create table if not exists IdXUser (
+	Email				VARCHAR_IGNORECASE(255) NOT NULL PRIMARY KEY,
+	User_Id				VARCHAR(64) NOT NULL,
+	User_Href			VARCHAR(1024) NOT NULL,
+	Registration_Href	VARCHAR(1024) NOT NULL,
+	CreatedDTM			Timestamp NOT NULL
+);
+
+CREATE INDEX  IF NOT EXISTS IDXUSER_USERID_INDEX ON IdXUser(User_Id);
+
 
 
 	
\ No newline at end of file
@@ -0,0 +1,91 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BoundedCacheTest {
+
+	private BoundedCache<String, String> cache;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+
+		cache = new BoundedCache<>("test", 10, 0);
+		executor = Executors.newFixedThreadPool(2);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void callerWaitingForALoadIsGivenTheErrorItThrew() throws Exception {
+
+		Error error = new Error("loader failed");
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch waiting = new CountDownLatch(1);
+		Future<String> loader = executor.submit(() -> cache.get("key", key -> {
+			loading.countDown();
+			waiting.await();
+			throw error;
+		}));
+		loading.await();
+		Future<String> waiter = executor.submit(() -> cache.get("key", key -> {
+			fail("The key was loaded twice");
+			return null;
+		}));
+		// Give the second caller time to start waiting for the load in progress
+		Thread.sleep(50);
+		waiting.countDown();
+
+		this.assertThrown(error, loader);
+		this.assertThrown(error, waiter);
+		assertNull(cache.getIfPresent("key"));
+		assertEquals("value", cache.get("key", key -> "value"));
+	}
+
+	protected void assertThrown(Error expected, Future<String> future) throws InterruptedException {
+
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("The load did not fail");
+		} catch (ExecutionException ex) {
+			assertSame(expected, ex.getCause());
+		} catch (TimeoutException ex) {
+			fail("The caller was not given the result of the load");
+		}
+	}
+}
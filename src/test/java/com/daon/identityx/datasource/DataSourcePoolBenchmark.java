@@ -0,0 +1,275 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+
+package com.daon.identityx.datasource;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.daon.identityx.controller.model.CreateAccount;
+import com.daon.identityx.entity.Account;
+import com.daon.identityx.entity.AccountCredential;
+import com.daon.identityx.entity.Audit;
+import com.daon.identityx.entity.AuditAction;
+import com.daon.identityx.entity.PasswordHashAlgorithm;
+import com.daon.identityx.entity.Session;
+import com.daon.identityx.utils.IdGenerator;
+
+/***
+ * Compares the connection pool with its defaults against the pool as set up by the
+ * DataSourcePoolConfigurer, and against the configured pool sized for every request thread.
+ *
+ * Each operation is the work of requests made through JPA in one transaction: an account and
+ * its credential are created and read back by email, the last login is updated, a session and
+ * an audit record are saved and the session is read.  The Hibernate settings, such as the JDBC
+ * batch size and the ordering of the inserts and updates, are those of application.properties
+ * so that the statements are sent as the application sends them.  An EntityManager is used
+ * rather than the Spring Data repositories so that the benchmark runs on any JVM.
+ *
+ * One configuration is measured per JVM so that one configuration does not run on code
+ * compiled by the JIT while running another.  Each run creates a new H2 file database from the
+ * schema, runs a warm-up round and then the measured rounds.  Run the configurations one after
+ * another, in turn and more than once, e.g. after mvn test-compile
+ *
+ * 	for round in 1 2 3; do for mode in default configured sized; do
+ * 		java -cp target/test-classes:target/classes:{test classpath} com.daon.identityx.datasource.DataSourcePoolBenchmark $mode [threads] [operations per thread] [rounds]
+ * 	done; done
+ *
+ * The modes are
+ * 	default - the Tomcat pool with its defaults (100 connections)
+ * 	configured - the DataSourcePoolConfigurer with fido.datasource.pool_size unset (100 connections)
+ * 	sized - the DataSourcePoolConfigurer with a connection for each thread plus the 4 background writers
+ *
+ * This is not a unit test and is not run by the build.  The threads default to 200, the
+ * default of server.tomcat.max-threads.
+ *
+ * @author Daon
+ *
+ */
+public class DataSourcePoolBenchmark {
+
+	private static final int BACKGROUND_THREADS = 4;
+
+	private static final String JPA_PROPERTIES = "spring.jpa.properties.";
+
+	private final int threads;
+	private final int operations;
+	private final int rounds;
+
+	private EntityManagerFactory entityManagerFactory;
+
+	public DataSourcePoolBenchmark(int threads, int operations, int rounds) {
+		this.threads = threads;
+		this.operations = operations;
+		this.rounds = rounds;
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		if (args.length == 0 || !args[0].matches("default|configured|sized")) {
+			System.err.println("Usage: DataSourcePoolBenchmark default|configured|sized [threads] [operations per thread] [rounds]");
+			System.exit(1);
+		}
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int operations = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+		new DataSourcePoolBenchmark(threads, operations, rounds).run(args[0]);
+		System.exit(0);
+	}
+
+	protected void run(String mode) throws Exception {
+
+		File directory = Files.createTempDirectory("pool-benchmark").toFile();
+		DataSource dataSource = new DataSource();
+		dataSource.setDriverClassName("org.h2.Driver");
+		dataSource.setUrl("jdbc:h2:" + new File(directory, "benchmark").getAbsolutePath());
+		dataSource.setUsername("sa");
+		dataSource.setPassword("sa");
+		StatementMetrics statementMetrics = new StatementMetrics();
+		boolean configured = !mode.equals("default");
+		if (configured) {
+			DataSourcePoolConfigurer configurer = new DataSourcePoolConfigurer();
+			ReflectionTestUtils.setField(configurer, "poolSize", mode.equals("sized") ? threads + BACKGROUND_THREADS : 0);
+			ReflectionTestUtils.setField(configurer, "minIdle", 10);
+			ReflectionTestUtils.setField(configurer, "maxWait", 5000);
+			ReflectionTestUtils.setField(configurer, "statementCacheSize", 1000);
+			ReflectionTestUtils.setField(configurer, "statementTiming", true);
+			configurer.postProcessBeforeInitialization(dataSource, "dataSource");
+			statementMetrics.setSlowStatement(1000);
+			statementMetrics.start();
+		}
+		LocalContainerEntityManagerFactoryBean factory = null;
+		try {
+			DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("schema.sql")), dataSource);
+			factory = this.createEntityManagerFactory(dataSource);
+			entityManagerFactory = factory.getObject();
+
+			long total = (long) threads * operations;
+			this.measure();
+			for (int round = 1; round <= rounds; round++) {
+				long millis = this.measure();
+				System.out.println(mode + " round " + round + ": " + total + " operations on " + threads + " threads in " + millis + "ms = "
+						+ (total * 1000 / Math.max(1, millis)) + " operations/s, pool size: " + dataSource.getMaxActive());
+			}
+			if (configured) {
+				for (Metric<?> metric : statementMetrics.metrics()) {
+					System.out.println("  " + metric.getName() + "=" + metric.getValue());
+				}
+			}
+		} finally {
+			if (factory != null) {
+				factory.destroy();
+			}
+			if (configured) {
+				statementMetrics.stop();
+			}
+			dataSource.close();
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	/***
+	 * Run the operations on each thread
+	 *
+	 * @return the time taken in milliseconds
+	 * @throws InterruptedException
+	 */
+	protected long measure() throws InterruptedException {
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		long start = System.nanoTime();
+		for (int i = 0; i < threads; i++) {
+			executor.execute(() -> {
+				try {
+					for (int j = 0; j < operations && failure.get() == null; j++) {
+						this.operation();
+					}
+				} catch (RuntimeException ex) {
+					failure.compareAndSet(null, ex);
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+		done.await();
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		executor.shutdown();
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+		return millis;
+	}
+
+	protected void operation() {
+
+		EntityManager entityManager = entityManagerFactory.createEntityManager();
+		EntityTransaction transaction = entityManager.getTransaction();
+		try {
+			transaction.begin();
+			CreateAccount createAccount = new CreateAccount();
+			createAccount.setFirstName("Benchmark");
+			createAccount.setLastName("User");
+			createAccount.setEmail(IdGenerator.newId() + "@example.com");
+			Account account = new Account(createAccount);
+			account.setLastLoggedIn(account.getCreatedDTM());
+			entityManager.persist(account);
+			AccountCredential credential = new AccountCredential();
+			credential.setAccountId(account.getId());
+			credential.setHashAlgorithm(PasswordHashAlgorithm.values()[0]);
+			credential.setIterations(1);
+			credential.setSalt(new byte[32]);
+			credential.setHashedPassword(new byte[32]);
+			entityManager.persist(credential);
+
+			account = entityManager.createQuery("select a from Account a where a.email = ?1", Account.class)
+					.setParameter(1, createAccount.getEmail()).getSingleResult();
+			account.setLastLoggedIn(new Timestamp(System.currentTimeMillis()));
+			Session session = new Session(account, Session.DEFAULT_SESSION_PERIOD);
+			entityManager.persist(session);
+			Audit audit = new Audit(AuditAction.CREATE_SESSION);
+			audit.setAccountId(account.getId());
+			audit.setSessionId(session.getId());
+			entityManager.persist(audit);
+			entityManager.createQuery("select s from Session s where s.id = ?1", Session.class)
+					.setParameter(1, session.getId()).getSingleResult();
+			transaction.commit();
+		} finally {
+			if (transaction.isActive()) {
+				transaction.rollback();
+			}
+			entityManager.close();
+		}
+	}
+
+	/***
+	 * Create the entity manager factory over the datasource with the Hibernate settings of the application
+	 *
+	 * @param dataSource
+	 * @return
+	 * @throws Exception
+	 */
+	protected LocalContainerEntityManagerFactoryBean createEntityManagerFactory(DataSource dataSource) throws Exception {
+
+		Map<String, Object> jpaProperties = new HashMap<>();
+		Properties applicationProperties = PropertiesLoaderUtils.loadProperties(new ClassPathResource("application.properties"));
+		for (String name : applicationProperties.stringPropertyNames()) {
+			if (name.startsWith(JPA_PROPERTIES)) {
+				jpaProperties.put(name.substring(JPA_PROPERTIES.length()), applicationProperties.getProperty(name));
+			}
+		}
+		// As set by Spring Boot
+		jpaProperties.put("hibernate.ejb.naming_strategy", "org.springframework.boot.orm.jpa.hibernate.SpringNamingStrategy");
+		// The rows are not validated so the benchmark also runs on JVMs without JAXB
+		jpaProperties.put("javax.persistence.validation.mode", "none");
+		LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+		factory.setDataSource(dataSource);
+		factory.setPackagesToScan(Account.class.getPackage().getName());
+		factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+		factory.setJpaPropertyMap(jpaProperties);
+		factory.afterPropertiesSet();
+		return factory;
+	}
+}
@@ -0,0 +1,128 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.daon.identityx.rest.model.pojo.AuthenticationRequest;
+
+public class AuthRequestPoolTest {
+
+	private static final int SIZE = 3;
+	private static final long MAX_AGE = 200;
+
+	private AuthRequestPool pool;
+	private AtomicInteger created;
+
+	@Before
+	public void setUp() {
+
+		pool = new AuthRequestPool();
+		ReflectionTestUtils.setField(pool, "counterService", mock(CounterService.class));
+		ReflectionTestUtils.setField(pool, "gaugeService", mock(GaugeService.class));
+		ReflectionTestUtils.setField(pool, "enabled", true);
+		ReflectionTestUtils.setField(pool, "size", SIZE);
+		// Only the refill on start up and the refills requested by the test run
+		ReflectionTestUtils.setField(pool, "refillInterval", TimeUnit.HOURS.toMillis(1));
+		ReflectionTestUtils.setField(pool, "maxAge", MAX_AGE);
+		ReflectionTestUtils.setField(pool, "expiryMargin", 0L);
+		created = new AtomicInteger();
+	}
+
+	@After
+	public void tearDown() {
+		pool.stop();
+	}
+
+	@Test
+	public void takeReturnsNullWhenNotStarted() {
+		assertNull(pool.take());
+	}
+
+	@Test
+	public void startFillsThePool() throws Exception {
+
+		pool.start(this::createRequest);
+		this.waitForCreated(SIZE);
+
+		assertNotNull(pool.take());
+	}
+
+	@Test
+	public void refillReplacesExpiredRequests() throws Exception {
+
+		pool.start(this::createRequest);
+		this.waitForCreated(SIZE);
+		Thread.sleep(MAX_AGE + 50);
+
+		pool.refill();
+
+		assertEquals(SIZE * 2, created.get());
+		AuthenticationRequest request = pool.take();
+		assertNotNull(request);
+		assertTrue("The request taken should be one of the replacements", Integer.parseInt(request.getAuthenticationRequestId()) > SIZE);
+	}
+
+	@Test
+	public void refillDiscardsRequestsAboutToExpireInIdentityX() throws Exception {
+
+		ReflectionTestUtils.setField(pool, "maxAge", TimeUnit.HOURS.toMillis(1));
+		ReflectionTestUtils.setField(pool, "expiryMargin", TimeUnit.HOURS.toMillis(1));
+		pool.start(this::createRequest);
+		this.waitForCreated(SIZE);
+
+		// Every request expires in IdentityX within the margin so each refill replaces them all
+		pool.refill();
+
+		assertEquals(SIZE * 2, created.get());
+	}
+
+	private AuthenticationRequest createRequest() {
+
+		AuthenticationRequest request = new AuthenticationRequest();
+		request.setAuthenticationRequestId(String.valueOf(created.incrementAndGet()));
+		request.setExpiration(new Date(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5)));
+		return request;
+	}
+
+	private void waitForCreated(int count) throws InterruptedException {
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (created.get() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, created.get());
+		// Let the start up refill record the last request before the test continues
+		Thread.sleep(50);
+	}
+}
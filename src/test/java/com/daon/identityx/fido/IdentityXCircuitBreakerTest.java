@@ -0,0 +1,150 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.net.SocketTimeoutException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.daon.identityx.controller.model.Error;
+import com.daon.identityx.exception.ServerBusyException;
+import com.daon.identityx.fido.IdentityXCircuitBreaker.State;
+import com.identityx.clientSDK.exceptions.IdxRestException;
+
+public class IdentityXCircuitBreakerTest {
+
+	private static final int WINDOW_SIZE = 10;
+
+	private IdentityXCircuitBreaker circuitBreaker;
+
+	@Before
+	public void setUp() {
+
+		circuitBreaker = new IdentityXCircuitBreaker();
+		ReflectionTestUtils.setField(circuitBreaker, "counterService", mock(CounterService.class));
+		ReflectionTestUtils.setField(circuitBreaker, "enabled", true);
+		ReflectionTestUtils.setField(circuitBreaker, "maxConcurrent", 16);
+		ReflectionTestUtils.setField(circuitBreaker, "shedLatency", 2000L);
+		ReflectionTestUtils.setField(circuitBreaker, "slowCall", 5000L);
+		ReflectionTestUtils.setField(circuitBreaker, "windowSize", WINDOW_SIZE);
+		ReflectionTestUtils.setField(circuitBreaker, "minimumCalls", WINDOW_SIZE);
+		ReflectionTestUtils.setField(circuitBreaker, "failureRate", 50);
+		ReflectionTestUtils.setField(circuitBreaker, "openDuration", 30000L);
+		ReflectionTestUtils.setField(circuitBreaker, "halfOpenProbes", 3);
+	}
+
+	@Test
+	public void clientErrorsDoNotOpenTheCircuit() {
+
+		this.failCalls("getAuthenticator", new RuntimeException(new StatusException(404)));
+		assertEquals(State.CLOSED, circuitBreaker.getState("getAuthenticator"));
+	}
+
+	@Test
+	public void serverErrorsAndTimeoutsOpenTheCircuit() {
+
+		this.failCalls("getUser", new RuntimeException(new StatusException(503)));
+		assertEquals(State.OPEN, circuitBreaker.getState("getUser"));
+		this.failCalls("listAuthenticators", new RuntimeException(new SocketTimeoutException()));
+		assertEquals(State.OPEN, circuitBreaker.getState("listAuthenticators"));
+	}
+
+	@Test
+	public void bugsAndRejectionsDoNotOpenTheCircuit() {
+
+		this.failCalls("getUser", new NullPointerException());
+		this.failCalls("getUser", new IllegalStateException());
+		this.failCalls("getUser", new RuntimeException(new ServerBusyException(Error.IDENTITYX_UNAVAILABLE)));
+		assertEquals(State.CLOSED, circuitBreaker.getState("getUser"));
+	}
+
+	@Test
+	public void openCircuitOnlyRejectsItsOwnOperation() {
+
+		this.failCalls("getAuthenticator", new RuntimeException(new IdxRestException("Not found")));
+		assertEquals(State.OPEN, circuitBreaker.getState("getAuthenticator"));
+		try {
+			circuitBreaker.call("getAuthenticator", () -> "authenticator");
+			fail("The call should have been rejected");
+		} catch (ServerBusyException ex) {
+			// expected
+		}
+		assertEquals("user", circuitBreaker.call("getUser", () -> "user"));
+		assertEquals(State.CLOSED, circuitBreaker.getState("getUser"));
+	}
+
+	@Test
+	public void circuitClosesAfterTheProbesSucceed() {
+
+		this.failCalls("getUser", new RuntimeException(new SocketTimeoutException()));
+		ReflectionTestUtils.setField(circuitBreaker, "openDuration", 0L);
+		for (int i = 0; i < 3; i++) {
+			assertEquals("user", circuitBreaker.call("getUser", () -> "user"));
+		}
+		assertEquals(State.CLOSED, circuitBreaker.getState("getUser"));
+		assertFalse(circuitBreaker.isIdentityXFailure(new IllegalArgumentException()));
+		assertTrue(circuitBreaker.isIdentityXFailure(new RuntimeException(new StatusException(500))));
+	}
+
+	/***
+	 * Fail a window's worth of calls of the operation with the exception
+	 *
+	 * @param operation
+	 * @param ex
+	 */
+	protected void failCalls(String operation, RuntimeException ex) {
+
+		for (int i = 0; i < WINDOW_SIZE; i++) {
+			try {
+				circuitBreaker.call(operation, () -> {
+					throw ex;
+				});
+			} catch (RuntimeException thrown) {
+				assertTrue(thrown == ex);
+			}
+		}
+	}
+
+	/***
+	 * An SDK exception which carries the HTTP status
+	 */
+	public static class StatusException extends IdxRestException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int httpStatus;
+
+		public StatusException(int httpStatus) {
+			super("HTTP " + httpStatus);
+			this.httpStatus = httpStatus;
+		}
+
+		public int getHttpStatus() {
+			return httpStatus;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class IdentityXFanOutExecutorTest {
+
+	private static final long CALL_TIMEOUT = 200;
+
+	private IdentityXFanOutExecutor executor;
+
+	@Before
+	public void setUp() {
+
+		executor = new IdentityXFanOutExecutor();
+		ReflectionTestUtils.setField(executor, "counterService", mock(CounterService.class));
+		ReflectionTestUtils.setField(executor, "gaugeService", mock(GaugeService.class));
+		ReflectionTestUtils.setField(executor, "enabled", true);
+		ReflectionTestUtils.setField(executor, "threads", 1);
+		ReflectionTestUtils.setField(executor, "queueDepth", 1);
+		ReflectionTestUtils.setField(executor, "callTimeout", CALL_TIMEOUT);
+		executor.start();
+	}
+
+	@After
+	public void tearDown() {
+		executor.stop();
+	}
+
+	@Test
+	public void resultsAreInTheOrderOfTheCalls() {
+
+		FanOutResult<String> result = executor.invokeAll("test", Arrays.asList(this.call("a", 20), this.call("b", 0), this.call("c", 0)));
+		assertEquals(Arrays.asList("a", "b", "c"), result.getResults());
+		assertFalse(result.hasFailures());
+	}
+
+	@Test
+	public void callsWaitForSpaceInTheQueue() {
+
+		// a runs on the pool thread and b waits in the queue, c and d wait for space in the
+		// queue - each has its own timeout from when it was submitted
+		FanOutResult<String> result = executor.invokeAll("test",
+				Arrays.asList(this.call("a", 20), this.call("b", 20), this.call("c", 20), this.call("d", 20)));
+		assertEquals(Arrays.asList("a", "b", "c", "d"), result.getResults());
+	}
+
+	@Test
+	public void callWhichCannotBeQueuedIsNotMade() {
+
+		// a holds the pool thread and b the queue for longer than the timeout so c is never queued
+		AtomicBoolean made = new AtomicBoolean();
+		Callable<String> c = () -> {
+			made.set(true);
+			return "c";
+		};
+		long start = System.currentTimeMillis();
+		FanOutResult<String> result = executor.invokeAll("test", Arrays.asList(this.call("a", CALL_TIMEOUT * 2), this.call("b", 0), c));
+		assertTrue(System.currentTimeMillis() - start < CALL_TIMEOUT * 2);
+		assertEquals(Arrays.asList(null, null, null), result.getResults());
+		assertTrue(result.getError(), result.getError().contains("call 3 failed: not started within " + CALL_TIMEOUT + "ms"));
+		assertFalse(made.get());
+	}
+
+	@Test
+	public void successesAreReturnedWithTheFailures() {
+
+		Callable<String> failing = () -> {
+			throw new IllegalStateException("archive failed");
+		};
+		FanOutResult<String> result = executor.invokeAll("test", Arrays.asList(this.call("a", 0), failing));
+		assertEquals(Collections.singletonList("a"), result.getSuccesses());
+		assertTrue(result.getError(), result.getError().contains("1 of 2 calls to test did not succeed - call 2 failed: archive failed"));
+	}
+
+	@Test
+	public void slowCallTimesOut() {
+
+		FanOutResult<String> result = executor.invokeAll("test", Arrays.asList(this.call("a", 0), this.call("b", CALL_TIMEOUT * 3)));
+		assertEquals(Arrays.asList("a", null), result.getResults());
+		assertTrue(result.getError(), result.getError().contains("1 of 2 calls to test did not succeed - call 2 timed out"));
+	}
+
+	protected Callable<String> call(String result, long millis) {
+
+		return () -> {
+			Thread.sleep(millis);
+			return result;
+		};
+	}
+}
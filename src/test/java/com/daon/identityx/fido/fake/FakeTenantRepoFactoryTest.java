@@ -0,0 +1,262 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.fido.fake;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.mock.env.MockPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.daon.identityx.controller.model.AuthenticatorInfo;
+import com.daon.identityx.controller.model.Error;
+import com.daon.identityx.exception.ProcessingException;
+import com.daon.identityx.fido.AuthRequestPool;
+import com.daon.identityx.fido.AuthenticatorListCache;
+import com.daon.identityx.fido.AuthenticatorTypeCache;
+import com.daon.identityx.fido.DeactivationResult;
+import com.daon.identityx.fido.FIDORegChallengeAndId;
+import com.daon.identityx.fido.IdentityXFanOutExecutor;
+import com.daon.identityx.fido.IdentityXRequestCoalescer;
+import com.daon.identityx.fido.IdentityXServices;
+import com.daon.identityx.fido.RegistrationChallengeStore;
+import com.daon.identityx.repository.IdXUserRepository;
+import com.daon.identityx.rest.model.def.AuthenticationRequestStatusEnum;
+import com.daon.identityx.rest.model.pojo.AuthenticationRequest;
+import com.daon.identityx.rest.model.pojo.RegistrationChallenge;
+import com.identityx.clientSDK.repositories.AuthenticatorRepository;
+
+public class FakeTenantRepoFactoryTest {
+
+	private static final Pattern CHALLENGE = Pattern.compile("\"challenge\":\"([^\"]+)\"");
+
+	private AnnotationConfigApplicationContext context;
+	private IdentityXServices services;
+
+	@Before
+	public void setUp() {
+
+		context = this.createContext(true);
+		services = context.getBean(IdentityXServices.class);
+	}
+
+	@After
+	public void tearDown() {
+
+		if (context != null) {
+			context.close();
+		}
+	}
+
+	@Test
+	public void identityXServicesUseTheFakeRepositories() {
+		assertTrue(services.getTenantRepoFactory() instanceof FakeTenantRepoFactory);
+	}
+
+	@Test
+	public void registeredAuthenticatorAuthenticatesWithTheChallenge() {
+
+		FIDORegChallengeAndId registration = services.createRegRequest("user@example.com", null);
+		String authenticatorId = this.register(registration);
+
+		AuthenticationRequest request = services.createAuthRequest();
+		AuthenticationRequest validated = services.validateAuthResponse(request.getHref(),
+				authenticatorId + ":" + this.getChallenge(request.getFidoAuthenticationRequest()));
+
+		assertEquals(AuthenticationRequestStatusEnum.COMPLETED_SUCCESSFUL, validated.getStatus());
+		assertEquals(registration.getIdXId(), validated.getUser().getId());
+	}
+
+	@Test
+	public void authenticatorIdAloneIsRejected() {
+
+		String authenticatorId = this.register(services.createRegRequest("user@example.com", null));
+
+		AuthenticationRequest request = services.createAuthRequest();
+		this.assertRejected(request, authenticatorId, Error.INVALID_CREDENTIALS);
+	}
+
+	@Test
+	public void challengeOfAnotherRequestIsRejected() {
+
+		String authenticatorId = this.register(services.createRegRequest("user@example.com", null));
+
+		AuthenticationRequest request = services.createAuthRequest();
+		AuthenticationRequest other = services.createAuthRequest();
+		this.assertRejected(request, authenticatorId + ":" + this.getChallenge(other.getFidoAuthenticationRequest()),
+				Error.INVALID_CREDENTIALS);
+	}
+
+	@Test
+	public void deletedAuthenticatorIsRevoked() {
+
+		FIDORegChallengeAndId registration = services.createRegRequest("user@example.com", null);
+		String authenticatorId = this.register(registration);
+		services.deleteAuthenticator(registration.getIdXId(), authenticatorId);
+
+		AuthenticationRequest request = services.createAuthRequest();
+		this.assertRejected(request, authenticatorId + ":" + this.getChallenge(request.getFidoAuthenticationRequest()),
+				Error.REVOKED_AUTHENTICATOR);
+	}
+
+	@Test
+	public void userIsKeptUntilEveryAuthenticatorIsArchived() throws Exception {
+
+		FIDORegChallengeAndId registration = services.createRegRequest("user@example.com", null);
+		String first = this.register(registration);
+		String second = this.register(services.createRegRequest("user@example.com", registration.getIdXId()));
+		// The first authenticator was archived by an earlier attempt at which the second failed
+		AuthenticatorRepository authRepo = services.getTenantRepoFactory().getAuthenticatorRepo();
+		authRepo.archive(authRepo.getById(first));
+		FakeIdentityXTenant tenant = context.getBean(FakeIdentityXTenant.class);
+		ReflectionTestUtils.setField(tenant, "errorRate", 100.0);
+		ReflectionTestUtils.setField(tenant, "failingOperations", Collections.singleton("authenticators.archive"));
+
+		DeactivationResult failed = services.deactivateAndDelete(registration.getIdXId());
+		assertFalse(failed.isUserDeleted());
+		assertEquals(Collections.singletonList(first), this.getIds(failed.getFidoDeregistrationRequests()));
+
+		ReflectionTestUtils.setField(tenant, "errorRate", 0.0);
+		DeactivationResult retried = services.deactivateAndDelete(registration.getIdXId());
+		assertTrue(retried.isUserDeleted());
+		assertEquals(new HashSet<>(Arrays.asList(first, second)), new HashSet<>(this.getIds(retried.getFidoDeregistrationRequests())));
+		assertNotNull(retried.getFidoDeregistrationRequests()[0].getFidoDeregistrationRequest());
+	}
+
+	@Test
+	public void registrationResponseWithoutTheChallengeIsRejected() {
+
+		FIDORegChallengeAndId registration = services.createRegRequest("user@example.com", null);
+		RegistrationChallenge processed = services.processRegistrationResponse(registration.getIdXId(),
+				registration.getRegistrationChallenge().getHref(), "{}");
+
+		assertEquals(Long.valueOf(1491), processed.getFidoResponseCode());
+		assertEquals(0, services.listAuthenticators(registration.getIdXId()).length);
+	}
+
+	@Test
+	public void fakeDoesNotStartWithoutBeingEnabled() {
+
+		context.close();
+		context = null;
+		try {
+			this.createContext(false);
+			fail("The fake IdentityX started without being enabled");
+		} catch (BeanCreationException ex) {
+			assertTrue(ex.getMostSpecificCause() instanceof IllegalStateException);
+		}
+	}
+
+	protected String register(FIDORegChallengeAndId registration) {
+
+		RegistrationChallenge regChallenge = registration.getRegistrationChallenge();
+		String response = "{\"challenge\":\"" + this.getChallenge(regChallenge.getFidoRegistrationRequest()) + "\"}";
+		RegistrationChallenge processed = services.processRegistrationResponse(registration.getIdXId(), regChallenge.getHref(), response);
+		assertEquals(Long.valueOf(1200), processed.getFidoResponseCode());
+		assertNotNull(processed.getFidoResponseMsg());
+		return processed.getFidoResponseMsg();
+	}
+
+	protected List<String> getIds(AuthenticatorInfo[] authenticators) {
+
+		List<String> ids = new ArrayList<>();
+		for (AuthenticatorInfo authenticator : authenticators) {
+			ids.add(authenticator.getId());
+		}
+		return ids;
+	}
+
+	protected void assertRejected(AuthenticationRequest request, String response, Error expected) {
+
+		try {
+			services.validateAuthResponse(request.getHref(), response);
+			fail("The authentication response was accepted: " + response);
+		} catch (ProcessingException ex) {
+			assertEquals(expected, ex.getError());
+		}
+	}
+
+	protected String getChallenge(String fidoRequest) {
+
+		Matcher matcher = CHALLENGE.matcher(fidoRequest);
+		assertTrue(matcher.find());
+		return matcher.group(1);
+	}
+
+	protected AnnotationConfigApplicationContext createContext(boolean enabled) {
+
+		AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+		applicationContext.getEnvironment().setActiveProfiles(FakeIdentityXTenant.PROFILE);
+		// One policy for both so that the test does not depend on the search criteria being readable from the query holders
+		applicationContext.getEnvironment().getPropertySources().addFirst(new MockPropertySource()
+				.withProperty("fido.identityx.fake.enabled", Boolean.toString(enabled))
+				.withProperty("fido.reg_policy_id", "Policy1")
+				.withProperty("fido.auth_policy_id", "Policy1"));
+		applicationContext.register(TestConfiguration.class, FakeIdentityXTenant.class, FakeTenantRepoFactory.class,
+				IdentityXServices.class, AuthenticatorTypeCache.class, RegistrationChallengeStore.class, AuthenticatorListCache.class,
+				IdentityXFanOutExecutor.class, AuthRequestPool.class, IdentityXRequestCoalescer.class);
+		applicationContext.refresh();
+		return applicationContext;
+	}
+
+	@Configuration
+	static class TestConfiguration {
+
+		@Bean
+		public static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
+			return new PropertySourcesPlaceholderConfigurer();
+		}
+
+		@Bean
+		public CounterService counterService() {
+			return mock(CounterService.class);
+		}
+
+		@Bean
+		public GaugeService gaugeService() {
+			return mock(GaugeService.class);
+		}
+
+		@Bean
+		public IdXUserRepository idXUserRepository() {
+			return mock(IdXUserRepository.class);
+		}
+	}
+}
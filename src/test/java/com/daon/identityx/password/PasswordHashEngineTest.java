@@ -0,0 +1,137 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.password;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.junit.Test;
+
+import com.daon.identityx.entity.PasswordHashAlgorithm;
+
+public class PasswordHashEngineTest {
+
+	private final PasswordHashEngine engine = new PasswordHashEngine();
+
+	@Test
+	public void iteratedSha256MatchesTheLegacyHash() throws Exception {
+
+		Random random = new Random(5);
+		for (int i = 0; i < 200; i++) {
+			byte[] salt = new byte[32];
+			random.nextBytes(salt);
+			String password = this.randomPassword(random);
+			int iterations = random.nextInt(2000);
+
+			assertArrayEquals(this.legacyHash(password, iterations, salt), engine.hashIteratedSha256(password, iterations, salt));
+		}
+	}
+
+	@Test
+	public void returnedHashIsNotChangedByTheNextHash() throws Exception {
+
+		byte[] salt = new byte[32];
+		byte[] first = engine.hashIteratedSha256("first", 10, salt);
+		engine.hashIteratedSha256("second", 10, salt);
+
+		assertArrayEquals(this.legacyHash("first", 10, salt), first);
+	}
+
+	@Test
+	public void pbkdf2MatchesTheTestVector() {
+
+		// RFC 7914 section 11, the first 32 bytes of the derived key
+		byte[] expected = this.fromHex("55ac046e56e3089fec1691c22544b605f94185216dde0465e68b9d57c20dacbc");
+		assertArrayEquals(expected, engine.hashPbkdf2("passwd", 1, "salt".getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void pbkdf2MatchesTheSecretKeyFactory() throws Exception {
+
+		SecretKeyFactory keyFactory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+		Random random = new Random(6);
+		for (int i = 0; i < 50; i++) {
+			byte[] salt = new byte[32];
+			random.nextBytes(salt);
+			String password = this.randomPassword(random);
+			int iterations = 1 + random.nextInt(3000);
+
+			byte[] expected = keyFactory.generateSecret(new PBEKeySpec(password.toCharArray(), salt, iterations, 256)).getEncoded();
+			assertArrayEquals(expected, engine.hashPbkdf2(password, iterations, salt));
+		}
+	}
+
+	@Test
+	public void interruptedHashStops() {
+
+		for (PasswordHashAlgorithm algorithm : PasswordHashAlgorithm.values()) {
+			Thread.currentThread().interrupt();
+			try {
+				engine.hash(algorithm, "password", Integer.MAX_VALUE, new byte[32]);
+				fail("The interrupted " + algorithm + " hash did not stop");
+			} catch (RuntimeException ex) {
+				// Expected
+			} finally {
+				Thread.interrupted();
+			}
+		}
+	}
+
+	protected byte[] fromHex(String hex) {
+
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+		}
+		return bytes;
+	}
+
+	protected String randomPassword(Random random) {
+
+		StringBuilder password = new StringBuilder();
+		int length = 1 + random.nextInt(40);
+		for (int i = 0; i < length; i++) {
+			// Include characters outside ASCII so the UTF-8 encoding is covered
+			password.append((char) (0x20 + random.nextInt(0x2000)));
+		}
+		return password.toString();
+	}
+
+	/***
+	 * The hash as it was computed by the SimpleController before the PasswordHashEngine
+	 */
+	protected byte[] legacyHash(String password, int iterationCount, byte[] salt) throws Exception {
+
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		digest.reset();
+		digest.update(salt);
+		byte[] input = digest.digest(password.getBytes("UTF-8"));
+		for (int i = 0; i < iterationCount; i++) {
+			digest.reset();
+			input = digest.digest(input);
+		}
+		return input;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.password;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.daon.identityx.entity.AccountCredential;
+import com.daon.identityx.entity.PasswordHashAlgorithm;
+
+public class PasswordHashPolicyTest {
+
+	@Test
+	public void calibratedCostIsRounded() {
+
+		assertEquals(120000, this.createPolicy(0, 123456).getCost());
+		assertEquals(130000, this.createPolicy(0, 126000).getCost());
+	}
+
+	@Test
+	public void calibratedCostNeverDropsBelowTheMinimum() {
+		assertEquals(10000, this.createPolicy(0, 1200).getCost());
+	}
+
+	@Test
+	public void slightlyHigherCalibrationDoesNotRehash() {
+
+		// Hashed after a restart which calibrated 100000, validated after one which calibrated 110000
+		PasswordHashPolicy policy = this.createPolicy(0, 110000);
+
+		assertFalse(policy.needsRehash(this.createCredential(PasswordHashAlgorithm.PBKDF2_SHA256, 100000)));
+		assertFalse(policy.needsRehash(this.createCredential(PasswordHashAlgorithm.PBKDF2_SHA256, 88000)));
+		assertTrue(policy.needsRehash(this.createCredential(PasswordHashAlgorithm.PBKDF2_SHA256, 87999)));
+	}
+
+	@Test
+	public void configuredCostRehashesAnyLowerCost() {
+
+		PasswordHashPolicy policy = this.createPolicy(100000, 0);
+
+		assertFalse(policy.needsRehash(this.createCredential(PasswordHashAlgorithm.PBKDF2_SHA256, 100000)));
+		assertTrue(policy.needsRehash(this.createCredential(PasswordHashAlgorithm.PBKDF2_SHA256, 99999)));
+	}
+
+	@Test
+	public void otherAlgorithmIsRehashed() {
+
+		PasswordHashPolicy policy = this.createPolicy(0, 100000);
+		assertTrue(policy.needsRehash(this.createCredential(PasswordHashAlgorithm.SHA256_ITERATED, 1000000)));
+	}
+
+	protected PasswordHashPolicy createPolicy(int configuredCost, final int calibratedCost) {
+
+		PasswordHashPolicy policy = new PasswordHashPolicy() {
+			@Override
+			public int calibrate(PasswordHashAlgorithm anAlgorithm, long target) {
+				return calibratedCost;
+			}
+		};
+		ReflectionTestUtils.setField(policy, "algorithm", PasswordHashAlgorithm.PBKDF2_SHA256);
+		ReflectionTestUtils.setField(policy, "configuredCost", configuredCost);
+		ReflectionTestUtils.setField(policy, "minCost", 10000);
+		ReflectionTestUtils.setField(policy, "targetMillis", 50L);
+		ReflectionTestUtils.setField(policy, "rehashMargin", 0.2);
+		policy.initialise();
+		return policy;
+	}
+
+	protected AccountCredential createCredential(PasswordHashAlgorithm algorithm, int iterations) {
+
+		AccountCredential credential = new AccountCredential();
+		credential.setHashAlgorithm(algorithm);
+		credential.setIterations(iterations);
+		return credential;
+	}
+}
@@ -0,0 +1,71 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.password;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.daon.identityx.entity.PasswordHashAlgorithm;
+import com.daon.identityx.exception.ServerBusyException;
+
+public class PasswordHashingExecutorTest {
+
+	private final PasswordHashEngine engine = new PasswordHashEngine();
+	private PasswordHashingExecutor executor;
+
+	@Before
+	public void setUp() {
+
+		executor = new PasswordHashingExecutor();
+		ReflectionTestUtils.setField(executor, "counterService", mock(CounterService.class));
+		ReflectionTestUtils.setField(executor, "gaugeService", mock(GaugeService.class));
+		ReflectionTestUtils.setField(executor, "threads", 1);
+		ReflectionTestUtils.setField(executor, "queueDepth", 1);
+		ReflectionTestUtils.setField(executor, "timeout", 100L);
+		executor.start();
+	}
+
+	@After
+	public void tearDown() {
+		executor.stop();
+	}
+
+	@Test
+	public void timedOutHashFreesTheThread() {
+
+		for (PasswordHashAlgorithm algorithm : PasswordHashAlgorithm.values()) {
+			try {
+				executor.execute(() -> engine.hash(algorithm, "password", Integer.MAX_VALUE, new byte[32]));
+				fail("The " + algorithm + " hash did not time out");
+			} catch (ServerBusyException ex) {
+				// Expected
+			}
+			// The only thread is free again once the cancelled hash has stopped
+			byte[] hash = executor.execute(() -> engine.hash(algorithm, "password", 10, new byte[32]));
+			assertArrayEquals(engine.hash(algorithm, "password", 10, new byte[32]), hash);
+		}
+	}
+}
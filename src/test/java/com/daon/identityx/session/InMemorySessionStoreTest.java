@@ -0,0 +1,188 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.daon.identityx.entity.Session;
+import com.daon.identityx.repository.SessionRepository;
+
+public class InMemorySessionStoreTest {
+
+	private static final String MERGE = "merge into Session";
+	private static final String DELETE = "delete from Session";
+	private static final long PERIOD = 900000;
+
+	private InMemorySessionStore store;
+	private SessionRepository sessionRepository;
+	private JdbcTemplate jdbcTemplate;
+	private List<String> merged;
+	private List<String> deleted;
+
+	@Before
+	public void setUp() throws Exception {
+
+		sessionRepository = mock(SessionRepository.class);
+		jdbcTemplate = mock(JdbcTemplate.class);
+		merged = new ArrayList<>();
+		deleted = new ArrayList<>();
+		when(jdbcTemplate.batchUpdate(anyString(), any(BatchPreparedStatementSetter.class))).thenAnswer(this::recordBatch);
+
+		store = new InMemorySessionStore();
+		ReflectionTestUtils.setField(store, "sessionRepository", sessionRepository);
+		ReflectionTestUtils.setField(store, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(store, "sessionReaper", mock(SessionReaper.class));
+		ReflectionTestUtils.setField(store, "writeBehind", true);
+		ReflectionTestUtils.setField(store, "persistThreshold", PERIOD);
+	}
+
+	@Test
+	public void deletedSessionIsNotLoadedBackBeforeItsRowIsDeleted() {
+
+		Session session = this.createSession();
+		store.create(session);
+		store.flush();
+		// The row is still in the Session table until the next write
+		when(sessionRepository.findById(session.getId())).thenReturn(this.copy(session));
+
+		store.delete(session);
+
+		assertNull(store.findById(session.getId()));
+	}
+
+	@Test
+	public void deletedSessionIsNotWrittenBack() {
+
+		Session session = this.createSession();
+		store.create(session);
+		store.flush();
+		merged.clear();
+		when(sessionRepository.findById(session.getId())).thenReturn(this.copy(session));
+		Session found = store.findById(session.getId());
+
+		// A request validating the session just after the log out
+		store.delete(session);
+		store.findById(session.getId());
+		store.extend(found, PERIOD);
+		store.flush();
+
+		assertEquals(0, merged.size());
+		assertEquals(1, deleted.size());
+	}
+
+	@Test
+	public void failedDeleteIsRetriedAndKeepsTheTombstone() {
+
+		Session session = this.createSession();
+		store.create(session);
+		store.flush();
+		when(sessionRepository.findById(session.getId())).thenReturn(this.copy(session));
+		doThrow(new DataAccessResourceFailureException("The database is not available")).doAnswer(this::recordBatch)
+				.when(jdbcTemplate).batchUpdate(eq(InMemorySessionStoreTest.deleteSql()), any(BatchPreparedStatementSetter.class));
+
+		store.delete(session);
+		store.flush();
+		assertNull(store.findById(session.getId()));
+
+		store.flush();
+		verify(jdbcTemplate, times(2)).batchUpdate(eq(InMemorySessionStoreTest.deleteSql()), any(BatchPreparedStatementSetter.class));
+		assertEquals(1, deleted.size());
+	}
+
+	@Test
+	public void failedWriteIsRetried() {
+
+		doThrow(new DataAccessResourceFailureException("The database is not available")).doAnswer(this::recordBatch)
+				.when(jdbcTemplate).batchUpdate(eq(InMemorySessionStoreTest.mergeSql()), any(BatchPreparedStatementSetter.class));
+		Session session = this.createSession();
+		store.create(session);
+
+		store.flush();
+		assertEquals(0, merged.size());
+		store.flush();
+
+		assertEquals(1, merged.size());
+		assertNotNull(store.findById(session.getId()));
+	}
+
+	protected static String mergeSql() {
+		return (String) ReflectionTestUtils.getField(new InMemorySessionStore(), "MERGE_SESSION");
+	}
+
+	protected static String deleteSql() {
+		return (String) ReflectionTestUtils.getField(new InMemorySessionStore(), "DELETE_SESSION");
+	}
+
+	protected int[] recordBatch(InvocationOnMock invocation) throws Exception {
+
+		String sql = (String) invocation.getArguments()[0];
+		BatchPreparedStatementSetter setter = (BatchPreparedStatementSetter) invocation.getArguments()[1];
+		for (int i = 0; i < setter.getBatchSize(); i++) {
+			PreparedStatement ps = mock(PreparedStatement.class);
+			setter.setValues(ps, i);
+			if (sql.startsWith(MERGE)) {
+				merged.add(sql);
+			} else if (sql.startsWith(DELETE)) {
+				deleted.add(sql);
+			}
+		}
+		return new int[setter.getBatchSize()];
+	}
+
+	protected Session createSession() {
+
+		Session session = new Session();
+		session.setAccountId("account");
+		session.setCreatedDTM(new Timestamp(System.currentTimeMillis()));
+		session.setExpiringDTM(new Timestamp(System.currentTimeMillis() + PERIOD));
+		return session;
+	}
+
+	protected Session copy(Session session) {
+
+		Session copy = new Session();
+		copy.setId(session.getId());
+		copy.setAccountId(session.getAccountId());
+		copy.setCreatedDTM(session.getCreatedDTM());
+		copy.setExpiringDTM(session.getExpiringDTM());
+		return copy;
+	}
+}
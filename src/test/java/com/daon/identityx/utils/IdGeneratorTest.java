@@ -0,0 +1,73 @@
+/*
+* Copyright Daon.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.daon.identityx.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class IdGeneratorTest {
+
+	private static final char[] URL_SAFE_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+	@Test
+	public void encodingMatchesUrlSafeBase64() {
+
+		Random random = new Random(7);
+		byte[] bytes = new byte[64];
+		for (int i = 0; i < 100000; i++) {
+			random.nextBytes(bytes);
+			int offset = random.nextInt(bytes.length - 16 + 1);
+			byte[] id = new byte[16];
+			System.arraycopy(bytes, offset, id, 0, 16);
+
+			assertEquals(Base64.getUrlEncoder().withoutPadding().encodeToString(id),
+					IdGenerator.encode(bytes, offset, URL_SAFE_ALPHABET));
+		}
+	}
+
+	@Test
+	public void idsAreUniqueAndTheSameLength() {
+
+		Set<String> ids = new HashSet<>();
+		for (int i = 0; i < 10000; i++) {
+			String id = IdGenerator.newId();
+			assertEquals(22, id.length());
+			assertTrue(ids.add(id));
+		}
+	}
+
+	@Test
+	public void timeOrderedIdsSortByCreationTime() throws Exception {
+
+		String previous = IdGenerator.newTimeOrderedId();
+		for (int i = 0; i < 20; i++) {
+			Thread.sleep(2);
+			String next = IdGenerator.newTimeOrderedId();
+			assertEquals(22, next.length());
+			assertTrue(previous + " should sort before " + next, previous.compareTo(next) < 0);
+			previous = next;
+		}
+	}
+}